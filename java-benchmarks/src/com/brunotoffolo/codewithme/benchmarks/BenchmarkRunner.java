@@ -0,0 +1,84 @@
+package com.brunotoffolo.codewithme.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Entry point of the benchmarks jar. Runs the benchmarks selected through the
+ * usual JMH command line options, always attaching the GC profiler so the
+ * allocation rate of every operation is reported along with its time.
+ * <p>
+ * Unless the command line chooses otherwise, the results are saved as JSON
+ * into the {@code results} folder, in a file named after the Java version that
+ * ran them. Running the same jar with different JDKs therefore produces one
+ * file per JDK, which can be compared side by side (for example, in the JMH
+ * Visualizer).
+ * <p>
+ * The options that only print information, such as the help or the list of
+ * benchmarks, are handled in the same way as by JMH's own main class, without
+ * running anything.
+ *
+ * @author Bruno Toffolo
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        try {
+            CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+            if (commandLineOptions.shouldHelp()) {
+                commandLineOptions.showHelp();
+            } else if (commandLineOptions.shouldList()) {
+                new Runner(commandLineOptions).list();
+            } else if (commandLineOptions.shouldListWithParams()) {
+                new Runner(commandLineOptions).listWithParams(commandLineOptions);
+            } else if (commandLineOptions.shouldListProfilers()) {
+                commandLineOptions.listProfilers();
+            } else if (commandLineOptions.shouldListResultFormats()) {
+                commandLineOptions.listResultFormats();
+            } else {
+                run(commandLineOptions);
+            }
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line:");
+            System.err.println(" " + e.getMessage());
+            System.exit(1);
+        } catch (NoBenchmarksException e) {
+            System.err.println("No matching benchmarks. Miss-spelled regexp?");
+            System.exit(1);
+        }
+    }
+
+    private static void run(CommandLineOptions commandLineOptions) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class);
+
+        // The result format and file given in the command line are kept
+        ResultFormatType format = commandLineOptions.getResultFormat().orElse(ResultFormatType.JSON);
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(format);
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            File resultsFolder = new File("results");
+            if (!resultsFolder.isDirectory() && !resultsFolder.mkdirs()) {
+                throw new IllegalStateException("Results folder could not be created");
+            }
+            options.result(new File(resultsFolder, "jmh-java-" + System.getProperty("java.version") + "." +
+                    format.toString().toLowerCase(Locale.ROOT)).getPath());
+        }
+
+        new Runner(options.build()).run();
+    }
+
+}
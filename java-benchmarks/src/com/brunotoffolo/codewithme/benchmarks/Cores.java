@@ -0,0 +1,50 @@
+package com.brunotoffolo.codewithme.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Fork-join pool with a limited parallelism, in which the parallel streams of
+ * the benchmarks are run so their scaling with 1, 2, 4 and all the available
+ * cores can be compared.
+ * <p>
+ * The pool is only created for the benchmark methods that receive this state,
+ * and only those methods are repeated for each number of cores.
+ *
+ * @author Bruno Toffolo
+ */
+@State(Scope.Benchmark)
+public class Cores {
+
+    @Param({"1", "2", "4", "all"})
+    private String cores;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int parallelism = "all".equals(cores) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(cores);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Gets the pool in which the parallel streams should be run.
+     *
+     * @return Fork-join pool with the benchmarked parallelism
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.benchmarks.Cores;
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.Customer;
+import com.brunotoffolo.codewithme.exceptions.util.StripedLongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the {@link AccountRegistry}, and the {@link StripedLongMap} it is
+ * built on, with a {@code ConcurrentHashMap<Integer, Account>} holding the
+ * same accounts.
+ * <p>
+ * Lookups are measured from a single thread and from 4 threads at the same
+ * time, and their time is reported per lookup. The creation of the maps runs
+ * in a parallel stream inside a fork-join pool with a limited parallelism, so
+ * its scaling with 1, 2, 4 and all the available cores can be compared.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class AccountRegistryBenchmark {
+
+    /** Number of accounts looked up by each invocation of the lookup benchmarks. */
+    private static final int LOOKUPS = 1024;
+
+    /** Number of the first account; the other ones are numbered sequentially. */
+    private static final int FIRST_NUMBER = 1000000;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private Account[] accounts;
+    private AccountRegistry registry;
+    private Map<Integer, Account> concurrentHashMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accounts = new Account[size];
+        registry = new AccountRegistry();
+        concurrentHashMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Customer customer = new Customer(String.format("%011d", i), "John", "Doe");
+            accounts[i] = registry.open(FIRST_NUMBER + i, customer);
+            concurrentHashMap.put(accounts[i].getNumber(), accounts[i]);
+        }
+    }
+
+    /**
+     * Random account numbers looked up by each thread.
+     */
+    @State(Scope.Thread)
+    public static class Lookups {
+
+        private final int[] numbers = new int[LOOKUPS];
+
+        @Setup(Level.Trial)
+        public void setUp(AccountRegistryBenchmark benchmark) {
+            SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+            for (int i = 0; i < LOOKUPS; i++) {
+                numbers[i] = FIRST_NUMBER + random.nextInt(benchmark.size);
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(LOOKUPS)
+    public long registryLookup(Lookups lookups) {
+        return lookUpInRegistry(lookups);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(LOOKUPS)
+    public long concurrentHashMapLookup(Lookups lookups) {
+        return lookUpInConcurrentHashMap(lookups);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(LOOKUPS)
+    public long concurrentRegistryLookup(Lookups lookups) {
+        return lookUpInRegistry(lookups);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(LOOKUPS)
+    public long concurrentConcurrentHashMapLookup(Lookups lookups) {
+        return lookUpInConcurrentHashMap(lookups);
+    }
+
+    @Benchmark
+    public StripedLongMap<Account> stripedMapCreation(Cores cores) {
+        StripedLongMap<Account> map = new StripedLongMap<>();
+        cores.getPool().submit(() -> IntStream.range(0, size).parallel()
+                .forEach(i -> map.putIfAbsent(accounts[i].getNumber(), accounts[i]))).join();
+        return map;
+    }
+
+    @Benchmark
+    public Map<Integer, Account> concurrentHashMapCreation(Cores cores) {
+        Map<Integer, Account> map = new ConcurrentHashMap<>();
+        cores.getPool().submit(() -> IntStream.range(0, size).parallel()
+                .forEach(i -> map.putIfAbsent(accounts[i].getNumber(), accounts[i]))).join();
+        return map;
+    }
+
+    @Benchmark
+    public double registryIteration() {
+        double[] total = new double[1];
+        registry.forEach(account -> total[0] += account.getBalance());
+        return total[0];
+    }
+
+    @Benchmark
+    public double concurrentHashMapIteration() {
+        double[] total = new double[1];
+        concurrentHashMap.values().forEach(account -> total[0] += account.getBalance());
+        return total[0];
+    }
+
+    private long lookUpInRegistry(Lookups lookups) {
+        long sum = 0;
+        for (int number : lookups.numbers) {
+            sum += registry.findByNumber(number).getNumber();
+        }
+        return sum;
+    }
+
+    private long lookUpInConcurrentHashMap(Lookups lookups) {
+        long sum = 0;
+        for (int number : lookups.numbers) {
+            sum += concurrentHashMap.get(number).getNumber();
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.audit.AsyncAuditSink;
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.AuditLevel;
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.Customer;
+import com.brunotoffolo.codewithme.exceptions.model.OperationResult;
+import com.brunotoffolo.codewithme.exceptions.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares applying a million random transactions one by one with applying
+ * them through the {@link TransactionPipeline} with 1, 2, 4 and as many shards
+ * as available cores.
+ * <p>
+ * The audit events are recorded by an {@link AsyncAuditSink} that discards
+ * them, so the cost of recording is measured without the console output, and
+ * the audit can also be turned off to show how much that cost is.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class TransactionPipelineBenchmark {
+
+    private static final int ACCOUNTS = 100000;
+    private static final int TRANSACTIONS = 1000000;
+    private static final int FIRST_NUMBER = 1000000;
+    private static final long FIRST_CARD_NUMBER = 4000000000000000L;
+
+    @Param({"OFF", "INFO"})
+    private AuditLevel auditLevel;
+
+    private AccountRegistry registry;
+    private List<Transaction> transactions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Audit.setSink(new AsyncAuditSink((type, number, amount, balance) -> { }));
+        Audit.setLevel(auditLevel);
+
+        // Deposits and withdrawals of the same average amount, so the balances
+        // stay around zero and some withdrawals are declined
+        SplittableRandom random = new SplittableRandom(74L);
+        transactions = new ArrayList<>(TRANSACTIONS);
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            int target = random.nextInt(ACCOUNTS);
+            double amount = random.nextInt(100000) / 100.0;
+            switch (random.nextInt(3)) {
+                case 0:
+                    transactions.add(Transaction.deposit(FIRST_NUMBER + target, amount));
+                    break;
+                case 1:
+                    transactions.add(Transaction.withdrawal(FIRST_NUMBER + target, amount));
+                    break;
+                default:
+                    transactions.add(Transaction.purchase(FIRST_CARD_NUMBER + target, amount / 100, "Coffee"));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Opens the accounts and cards again before every call, so each call
+     * starts from empty balances and applies the transactions with the same
+     * outcomes, instead of finding the cards closer to their limits than the
+     * previous call did.
+     */
+    @Setup(Level.Invocation)
+    public void openAccounts() {
+        Calendar expirationDate = new GregorianCalendar();
+        expirationDate.add(Calendar.YEAR, 5);
+
+        registry = new AccountRegistry(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = registry.open(FIRST_NUMBER + i, new Customer(String.format("%011d", i), "John", "Doe"));
+            registry.addCreditCard(account, new CreditCard(123456, expirationDate, 5000, "Visa", FIRST_CARD_NUMBER + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Audit.getSink().close();
+    }
+
+    /**
+     * Pipeline with a given number of shards, created for the accounts opened
+     * for each call.
+     */
+    @State(Scope.Benchmark)
+    public static class Shards {
+
+        @Param({"1", "2", "4", "all"})
+        private String shards;
+
+        private TransactionPipeline pipeline;
+
+        @Setup(Level.Invocation)
+        public void setUp(TransactionPipelineBenchmark benchmark) {
+            int count = "all".equals(shards) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(shards);
+            pipeline = new TransactionPipeline(benchmark.registry, count);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            pipeline.close();
+        }
+    }
+
+    @Benchmark
+    public int oneByOne() {
+        int declined = 0;
+        for (Transaction transaction : transactions) {
+            OperationResult result;
+            if (transaction.isCardTransaction()) {
+                result = registry.findCardByNumber(transaction.getTarget())
+                        .tryAddPurchase(transaction.getAmount(), transaction.getDescription());
+            } else if (transaction.getType() == Transaction.Type.DEPOSIT) {
+                registry.findByNumber((int) transaction.getTarget()).deposit(transaction.getAmount());
+                continue;
+            } else {
+                result = registry.findByNumber((int) transaction.getTarget()).tryWithdraw(transaction.getAmount());
+            }
+            if (!result.isApproved()) {
+                declined++;
+            }
+        }
+        return declined;
+    }
+
+    @Benchmark
+    public int pipeline(Shards shards) {
+        int declined = 0;
+        for (CompletableFuture<Double> result : shards.pipeline.submitAll(transactions.stream())) {
+            if (result.handle((balance, e) -> e != null).join()) {
+                declined++;
+            }
+        }
+        return declined;
+    }
+
+}
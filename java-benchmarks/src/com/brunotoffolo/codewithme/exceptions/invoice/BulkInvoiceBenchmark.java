@@ -0,0 +1,129 @@
+package com.brunotoffolo.codewithme.exceptions.invoice;
+
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.AuditLevel;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing the invoices of ten thousand cards, with twenty purchases
+ * each, by calling {@link CreditCard#createInvoice(String)} for every card with
+ * writing them through the {@link BulkInvoiceWriter}, either into one file per
+ * card or into one file per batch of a thousand cards.
+ * <p>
+ * The line printed by {@code createInvoice} for each invoice is discarded, so
+ * the console does not take part in the measurement.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BulkInvoiceBenchmark {
+
+    private static final int CARDS = 10000;
+    private static final int PURCHASES_PER_CARD = 20;
+    private static final int BATCH_SIZE = 1000;
+    private static final long FIRST_CARD_NUMBER = 4000000000000000L;
+
+    private List<CreditCard> cards;
+    private Path directory;
+    private BulkInvoiceWriter writer;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Audit.setLevel(AuditLevel.OFF);
+
+        Calendar expirationDate = new GregorianCalendar();
+        expirationDate.add(Calendar.YEAR, 5);
+
+        SplittableRandom random = new SplittableRandom(74L);
+        long monthStart = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+        cards = new ArrayList<>(CARDS);
+        for (int i = 0; i < CARDS; i++) {
+            CreditCard card = new CreditCard(123456, expirationDate, 50000, "Visa", FIRST_CARD_NUMBER + i);
+            double balance = 0;
+            for (int j = 0; j < PURCHASES_PER_CARD; j++) {
+                long time = monthStart + random.nextLong(TimeUnit.DAYS.toMillis(30));
+                double amount = random.nextInt(100000) / 100.0;
+                balance += amount;
+                card.restorePurchase(time, amount, "Purchase " + j, balance);
+            }
+            cards.add(card);
+        }
+
+        directory = Files.createTempDirectory("invoices");
+        writer = new BulkInvoiceWriter();
+
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public int createInvoice() {
+        for (CreditCard card : cards) {
+            card.createInvoice(directory.resolve(card.getNumber() + ".txt").toString());
+        }
+        return cards.size();
+    }
+
+    @Benchmark
+    public int bulkOneFilePerCard() throws IOException {
+        writer.writeEach(cards, card -> directory.resolve(card.getNumber() + ".txt"));
+        return cards.size();
+    }
+
+    @Benchmark
+    public int bulkOneFilePerBatch() throws IOException {
+        writer.writeBatches(cards, BATCH_SIZE, batch -> directory.resolve("batch-" + batch + ".txt"));
+        return cards.size();
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+import com.brunotoffolo.codewithme.exceptions.exception.InsufficientFundsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of declined withdrawals when most of the withdrawals are
+ * declined, comparing the three ways a decline can be reported: an
+ * {@link InsufficientFundsException} with a stack trace, as thrown by
+ * {@link AtomicBalance#subtract(double)}, the same exception without a stack
+ * trace, and the {@link OperationResult} returned by
+ * {@link AtomicBalance#trySubtract(double)}.
+ * <p>
+ * The withdrawals are performed straight on the balance, which is what the
+ * methods of the {@link Account} and the {@link CreditCard} do, so the console
+ * output of these classes does not hide the cost of the declines. Every
+ * approved withdrawal is deposited back, so the balance, and thus the ratio of
+ * declined withdrawals, never changes. The time is reported per withdrawal.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class DeclinedWithdrawalBenchmark {
+
+    /** Number of withdrawals performed by each invocation. */
+    private static final int WITHDRAWALS = 1024;
+
+    /** Amount of the withdrawals that are approved. */
+    private static final double APPROVED_AMOUNT = 10.00;
+
+    /** Amount of the withdrawals that are declined. */
+    private static final double DECLINED_AMOUNT = 1000000.00;
+
+    private static final String MESSAGE = "Desired amount is higher than available amount";
+
+    /** Ratio of the withdrawals that are declined. */
+    @Param({"0.5", "0.9", "0.99"})
+    private double rejectionRatio;
+
+    private AtomicBalance balance;
+    private double[] amounts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        balance = new AtomicBalance(2000.00);
+        balance.add(1000.00);
+
+        SplittableRandom random = new SplittableRandom(74L);
+        amounts = new double[WITHDRAWALS];
+        for (int i = 0; i < WITHDRAWALS; i++) {
+            amounts[i] = random.nextDouble() < rejectionRatio ? DECLINED_AMOUNT : APPROVED_AMOUNT;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WITHDRAWALS)
+    public int exceptionWithStackTrace() {
+        int declined = 0;
+        for (double amount : amounts) {
+            try {
+                balance.subtract(amount);
+                balance.add(amount);
+            } catch (InsufficientFundsException e) {
+                declined++;
+            }
+        }
+        return declined;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WITHDRAWALS)
+    public int exceptionWithoutStackTrace() {
+        int declined = 0;
+        for (double amount : amounts) {
+            try {
+                subtractWithoutStackTrace(amount);
+                balance.add(amount);
+            } catch (InsufficientFundsException e) {
+                declined++;
+            }
+        }
+        return declined;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WITHDRAWALS)
+    public int operationResult() {
+        int declined = 0;
+        for (double amount : amounts) {
+            if (balance.trySubtract(amount).isApproved()) {
+                balance.add(amount);
+            } else {
+                declined++;
+            }
+        }
+        return declined;
+    }
+
+    /**
+     * Same as {@link AtomicBalance#subtract(double)}, but throwing an exception
+     * without a stack trace.
+     */
+    private double subtractWithoutStackTrace(double amount) throws InsufficientFundsException {
+        OperationResult result = balance.trySubtract(amount);
+        if (!result.isApproved()) {
+            throw new InsufficientFundsException(MESSAGE, null, false, false);
+        }
+        return result.getBalance();
+    }
+
+}
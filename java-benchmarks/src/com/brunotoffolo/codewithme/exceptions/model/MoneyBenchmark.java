@@ -0,0 +1,108 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares applying purchases to the balance of a card, checking each one
+ * against the limit as {@link CreditCard#tryAddPurchase(double, String)} does,
+ * with the amounts kept as doubles, as {@link BigDecimal}s and as cents
+ * through {@link Money}.
+ * <p>
+ * Only the cents and the decimals give exact balances, and the allocation
+ * rate reported by the GC profiler shows that only the cents do not allocate.
+ * The time is reported per purchase.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+
+    /** Number of purchases applied by each invocation. */
+    private static final int PURCHASES = 1024;
+
+    /** Limit of the card, which is reached by about a tenth of the purchases. */
+    private static final double LIMIT = 450000.00;
+
+    private double[] doubleAmounts;
+    private BigDecimal[] decimalAmounts;
+    private long[] centAmounts;
+
+    private BigDecimal decimalLimit;
+    private long centLimit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(74L);
+        doubleAmounts = new double[PURCHASES];
+        decimalAmounts = new BigDecimal[PURCHASES];
+        centAmounts = new long[PURCHASES];
+        for (int i = 0; i < PURCHASES; i++) {
+            long cents = random.nextInt(100000);
+            doubleAmounts[i] = Money.USD.toMajor(cents);
+            decimalAmounts[i] = Money.USD.toBigDecimal(cents);
+            centAmounts[i] = cents;
+        }
+
+        decimalLimit = BigDecimal.valueOf(LIMIT);
+        centLimit = Money.USD.toMinor(LIMIT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PURCHASES)
+    public double doubleBalance() {
+        double balance = 0;
+        for (double amount : doubleAmounts) {
+            if (balance + amount <= LIMIT) {
+                balance += amount;
+            }
+        }
+        return balance;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PURCHASES)
+    public BigDecimal bigDecimalBalance() {
+        BigDecimal balance = BigDecimal.ZERO;
+        for (BigDecimal amount : decimalAmounts) {
+            BigDecimal updated = balance.add(amount);
+            if (updated.compareTo(decimalLimit) <= 0) {
+                balance = updated;
+            }
+        }
+        return balance;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PURCHASES)
+    public long moneyBalance() {
+        long balance = 0;
+        for (long amount : centAmounts) {
+            long updated = Money.add(balance, amount);
+            if (updated <= centLimit) {
+                balance = updated;
+            }
+        }
+        return balance;
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.benchmarks.Cores;
+import com.brunotoffolo.codewithme.streams.index.InvertedIndex;
+import com.brunotoffolo.codewithme.streams.io.LineSearchCache;
+import com.brunotoffolo.codewithme.streams.util.AhoCorasickMatcher;
+import com.brunotoffolo.codewithme.streams.util.LengthStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Measures every search strategy of the {@link BookParser} over books of
+ * different sizes, which are built by repeating the original book a given
+ * number of times.
+ * <p>
+ * The strategies that use parallel streams run inside a fork-join pool with a
+ * limited parallelism, so the speed-up they get from 1, 2, 4 and all the
+ * available cores can be compared.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BookParserBenchmark {
+
+    /** Path of the original book, which can be changed through a system property. */
+    private static final Path BOOK_PATH = Paths.get(System.getProperty("book.path", "../java-streams/resources/pg74.txt"));
+
+    /** Number of times the original book is repeated in the benchmarked book. */
+    @Param({"1", "10", "100"})
+    private int copies;
+
+    private List<String> bookWordsList;
+    private String[] bookWordsArray;
+    private Path bookFile;
+    private Path indexFile;
+    private InvertedIndex index;
+    private Predicate<String> filter;
+    private LineSearchCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> book = BookParser.readBook(BOOK_PATH);
+        if (book.isEmpty()) {
+            throw new IOException("Book could not be read from " + BOOK_PATH.toAbsolutePath());
+        }
+
+        bookWordsList = new ArrayList<>(book.size() * copies);
+        for (int i = 0; i < copies; i++) {
+            bookWordsList.addAll(book);
+        }
+        bookWordsArray = bookWordsList.toArray(new String[bookWordsList.size()]);
+
+        bookFile = Files.createTempFile("book", ".txt");
+        Files.write(bookFile, bookWordsList, StandardCharsets.UTF_8);
+        indexFile = Files.createTempFile("book", ".idx");
+        Files.delete(indexFile);
+        index = BookParser.openIndex(bookFile, indexFile);
+
+        filter = AhoCorasickMatcher.of(BookParser.DESIRED_WORD);
+        cache = new LineSearchCache(64L * 1024 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(bookFile);
+        Files.deleteIfExists(indexFile);
+    }
+
+    @Benchmark
+    public List<String> manualListIteration() {
+        return BookParser.manualListIteration(bookWordsList, filter);
+    }
+
+    @Benchmark
+    public List<String> manualArrayIteration() {
+        return BookParser.manualArrayIteration(bookWordsArray, filter);
+    }
+
+    @Benchmark
+    public List<String> sequentialStreamIteration() {
+        return BookParser.sequentialStreamIteration(bookWordsList, filter);
+    }
+
+    @Benchmark
+    public List<String> parallelStreamIteration(Cores cores) {
+        return cores.getPool().submit(() -> BookParser.parallelStreamIteration(bookWordsList, filter)).join();
+    }
+
+    /**
+     * Same as {@link #parallelStreamIteration}, but also reading the book from
+     * the file, which is done by a single thread before the stream is created.
+     */
+    @Benchmark
+    public List<String> readAllLinesAndParallelStreamIteration(Cores cores) {
+        return cores.getPool().submit(() ->
+                BookParser.parallelStreamIteration(BookParser.readBook(bookFile), filter)).join();
+    }
+
+    @Benchmark
+    public List<String> parallelFileStreamIteration(Cores cores) {
+        return cores.getPool().submit(() -> BookParser.parallelFileStreamIteration(bookFile, filter)).join();
+    }
+
+    @Benchmark
+    public List<String> mappedFileSearch() {
+        return BookParser.mappedFileSearch(bookFile);
+    }
+
+    @Benchmark
+    public List<String> swarFileSearch() {
+        return BookParser.swarFileSearch(bookFile);
+    }
+
+    /**
+     * Repeats the same search over a book that does not change, so every
+     * search but the first one is answered by the cache after checking that
+     * the book is still the same.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> cachedFileSearch() {
+        return BookParser.cachedFileSearch(cache, bookFile);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] indexedWordLookup() {
+        return index.lookup(BookParser.DESIRED_WORD.trim());
+    }
+
+    /**
+     * Statistics of the lines that start with an uppercase letter as they were
+     * originally computed, streaming the book twice and matching every line
+     * against a regular expression.
+     */
+    @Benchmark
+    public OptionalDouble twoPassRegexStatistics() {
+        long matches = bookWordsList.stream()
+                .filter(r -> r.matches("[A-Z].*"))
+                .count();
+        OptionalDouble averageCharacters = bookWordsList.stream()
+                .filter(r -> r.matches("[A-Z].*"))
+                .mapToInt(r -> r.length())
+                .average();
+        return matches > 0 ? averageCharacters : OptionalDouble.empty();
+    }
+
+    @Benchmark
+    public LengthStatistics singlePassStatistics() {
+        return BookParser.uppercaseLineStatistics(bookWordsList, false);
+    }
+
+    @Benchmark
+    public LengthStatistics parallelSinglePassStatistics(Cores cores) {
+        return cores.getPool().submit(() -> BookParser.uppercaseLineStatistics(bookWordsList, true)).join();
+    }
+
+}
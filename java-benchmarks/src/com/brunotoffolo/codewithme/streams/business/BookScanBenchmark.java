@@ -0,0 +1,121 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.streams.util.AhoCorasickMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Compares the four original search strategies of the {@link BookParser},
+ * which iterate over the lines of the book already decoded into the heap, with
+ * the searches made straight over the bytes of the book file, for books of up
+ * to a gigabyte, which are built by repeating the original book.
+ * <p>
+ * The book takes around 420 kilobytes, so the largest book has about 23
+ * million lines. The in-memory strategies get the lines decoded from the
+ * repeated file, so every copy of a line is a string of its own, as if a book
+ * that large had been read. That takes from two to three and a half gigabytes
+ * of heap, depending on whether the JDK keeps Latin-1 strings in one byte per
+ * character, hence the larger heap of this benchmark. The lines are decoded
+ * only once, before the measurements, so the in-memory strategies are measured
+ * at their best. The file searches read the book from the page cache at every
+ * invocation and only decode the lines that contain the word.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class BookScanBenchmark {
+
+    /** Path of the original book, which can be changed through a system property. */
+    private static final Path BOOK_PATH = Paths.get(System.getProperty("book.path", "../java-streams/resources/pg74.txt"));
+
+    /** Number of times the original book is repeated, up to about a gigabyte. */
+    @Param({"100", "1000", "2500"})
+    private int copies;
+
+    private List<String> bookWordsList;
+    private String[] bookWordsArray;
+    private Path bookFile;
+    private Predicate<String> filter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] bookBytes = Files.readAllBytes(BOOK_PATH);
+        bookFile = Files.createTempFile("book", ".txt");
+        try (OutputStream output = Files.newOutputStream(bookFile)) {
+            for (int i = 0; i < copies; i++) {
+                output.write(bookBytes);
+            }
+        }
+
+        // Read back from the repeated file instead of repeating the lines of the
+        // original book, which would only repeat references to the same strings
+        bookWordsList = BookParser.readBook(bookFile);
+        if (bookWordsList.isEmpty()) {
+            throw new IOException("Book could not be read from " + bookFile.toAbsolutePath());
+        }
+        bookWordsArray = bookWordsList.toArray(new String[bookWordsList.size()]);
+
+        filter = AhoCorasickMatcher.of(BookParser.DESIRED_WORD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(bookFile);
+    }
+
+    @Benchmark
+    public List<String> manualListIteration() {
+        return BookParser.manualListIteration(bookWordsList, filter);
+    }
+
+    @Benchmark
+    public List<String> manualArrayIteration() {
+        return BookParser.manualArrayIteration(bookWordsArray, filter);
+    }
+
+    @Benchmark
+    public List<String> sequentialStreamIteration() {
+        return BookParser.sequentialStreamIteration(bookWordsList, filter);
+    }
+
+    @Benchmark
+    public List<String> parallelStreamIteration() {
+        return BookParser.parallelStreamIteration(bookWordsList, filter);
+    }
+
+    @Benchmark
+    public List<String> mappedFileSearch() {
+        return BookParser.mappedFileSearch(bookFile);
+    }
+
+    @Benchmark
+    public List<String> swarFileSearch() {
+        return BookParser.swarFileSearch(bookFile);
+    }
+
+}
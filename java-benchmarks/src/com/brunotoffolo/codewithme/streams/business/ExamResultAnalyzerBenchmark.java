@@ -0,0 +1,88 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.streams.model.ExamResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of the {@link ExamResultAnalyzer} over different
+ * numbers of exam results.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ExamResultAnalyzerBenchmark {
+
+    private static final long SEED = 74L;
+
+    @Param({"100000", "1000000", "10000000"})
+    private long size;
+
+    private List<ExamResult> examResults;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        examResults = ExamResultAnalyzer.prepareExamResults(size, SEED);
+    }
+
+    /**
+     * Fresh copy of the exam results for every invocation, as the manual
+     * iteration sorts the list it receives and would otherwise be measured over
+     * an already sorted list.
+     */
+    @State(Scope.Thread)
+    public static class UnsortedCopy {
+
+        private List<ExamResult> examResults;
+
+        @Setup(Level.Invocation)
+        public void setUp(ExamResultAnalyzerBenchmark benchmark) {
+            examResults = new ArrayList<>(benchmark.examResults);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> manualIteration(UnsortedCopy copy) {
+        return ExamResultAnalyzer.manualIteration(copy.examResults);
+    }
+
+    @Benchmark
+    public List<Integer> streamOperations() {
+        return ExamResultAnalyzer.streamOperations(examResults);
+    }
+
+    @Benchmark
+    public List<Integer> manualTopKIteration() {
+        return ExamResultAnalyzer.manualTopKIteration(examResults);
+    }
+
+    @Benchmark
+    public List<Integer> streamTopKOperations() {
+        return ExamResultAnalyzer.streamTopKOperations(examResults);
+    }
+
+    @Benchmark
+    public List<Integer> parallelStreamTopKOperations() {
+        return ExamResultAnalyzer.parallelStreamTopKOperations(examResults);
+    }
+
+}
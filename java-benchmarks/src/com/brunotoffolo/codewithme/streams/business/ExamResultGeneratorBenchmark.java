@@ -0,0 +1,49 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.benchmarks.Cores;
+import com.brunotoffolo.codewithme.streams.model.ExamResultTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the {@link ExamResultGenerator} scales when 1, 2, 4 and all the
+ * available cores are used to generate tables of exam results.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ExamResultGeneratorBenchmark {
+
+    @Param({"1000000", "10000000", "100000000"})
+    private int size;
+
+    private ExamResultGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        generator = new ExamResultGenerator(74L);
+    }
+
+    @Benchmark
+    public ExamResultTable generateTable(Cores cores) {
+        return cores.getPool().submit(() -> generator.generateTable(size)).join();
+    }
+
+}
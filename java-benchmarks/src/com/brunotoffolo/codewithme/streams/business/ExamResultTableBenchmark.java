@@ -0,0 +1,86 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.streams.model.ExamResult;
+import com.brunotoffolo.codewithme.streams.model.ExamResultTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the same queries of the {@link ExamResultAnalyzer} when performed
+ * over a list of {@link ExamResult} objects and over an {@link ExamResultTable}
+ * holding the same exam results.
+ * <p>
+ * The threshold used by the match benchmarks is higher than any possible
+ * grade, so both of them need to traverse all the exam results.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ExamResultTableBenchmark {
+
+    private static final double THRESHOLD = 10.0;
+
+    private static final long SEED = 74L;
+
+    @Param({"100000", "1000000", "10000000"})
+    private long size;
+
+    private List<ExamResult> examResults;
+    private ExamResultTable examResultTable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        examResults = ExamResultAnalyzer.prepareExamResults(size, SEED);
+        examResultTable = ExamResultTable.of(examResults);
+    }
+
+    @Benchmark
+    public boolean listAnyMatch() {
+        return examResults.stream().anyMatch(r -> r.getGrade() > THRESHOLD);
+    }
+
+    @Benchmark
+    public boolean tableAnyMatch() {
+        return examResultTable.anyGradeHigherThan(THRESHOLD);
+    }
+
+    @Benchmark
+    public List<Integer> listTopK() {
+        return ExamResultAnalyzer.manualTopKIteration(examResults);
+    }
+
+    @Benchmark
+    public List<Integer> tableTopK() {
+        return ExamResultAnalyzer.tableTopKOperations(examResultTable);
+    }
+
+    @Benchmark
+    public OptionalDouble listAverageGrade() {
+        return examResults.stream().mapToDouble(ExamResult::getGrade).average();
+    }
+
+    @Benchmark
+    public OptionalDouble tableAverageGrade() {
+        return examResultTable.averageGrade();
+    }
+
+}
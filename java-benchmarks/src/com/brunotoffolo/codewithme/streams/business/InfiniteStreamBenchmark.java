@@ -0,0 +1,69 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.benchmarks.Cores;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of the {@link InfiniteStream} over different numbers
+ * of generated values.
+ * <p>
+ * The operations that use parallel streams run inside a fork-join pool with a
+ * limited parallelism, so their scaling with 1, 2, 4 and all the available
+ * cores can be compared.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class InfiniteStreamBenchmark {
+
+    /** Number of random values skipped and then considered by the stream. */
+    @Param({"100000", "1000000", "10000000"})
+    private long count;
+
+    @Benchmark
+    public double maxRandomNumber() {
+        return InfiniteStream.maxRandomNumber(count);
+    }
+
+    @Benchmark
+    public double primitiveMaxRandomNumber() {
+        return InfiniteStream.primitiveMaxRandomNumber(count);
+    }
+
+    @Benchmark
+    public double approximateMaxRandomNumber() {
+        return InfiniteStream.approximateMaxRandomNumber(count);
+    }
+
+    @Benchmark
+    public double parallelMaxRandomNumber(Cores cores) {
+        return cores.getPool().submit(() -> InfiniteStream.maxRandomNumber(count, true)).join();
+    }
+
+    @Benchmark
+    public long gaussianSum() {
+        return InfiniteStream.gaussianSum(count, false);
+    }
+
+    @Benchmark
+    public long parallelGaussianSum(Cores cores) {
+        return cores.getPool().submit(() -> InfiniteStream.gaussianSum(count, true)).join();
+    }
+
+}
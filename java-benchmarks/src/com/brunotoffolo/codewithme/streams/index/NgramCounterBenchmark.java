@@ -0,0 +1,122 @@
+package com.brunotoffolo.codewithme.streams.index;
+
+import com.brunotoffolo.codewithme.streams.io.LineSpliterator;
+import com.brunotoffolo.codewithme.streams.util.WordTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares counting the words, bigrams and trigrams of the book, repeated a
+ * given number of times, and finding the ten most frequent trigrams.
+ * <p>
+ * The baseline splits every line into a list of words and counts the n-grams
+ * joined into new Strings in a {@code HashMap<String, Long>}. The
+ * {@link NgramCounter} is run with a budget the counts always fit into and
+ * with a small budget, which makes it spill the counts to disk and merge them
+ * back, to show what the spilling costs.
+ *
+ * @author Bruno Toffolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class NgramCounterBenchmark {
+
+    /** Path of the original book, which can be changed through a system property. */
+    private static final Path BOOK_PATH = Paths.get(System.getProperty("book.path", "../java-streams/resources/pg74.txt"));
+
+    private static final long LARGE_BUDGET = 1L << 30;
+    private static final long SMALL_BUDGET = 1L << 20;
+
+    /** Number of times the original book is repeated in the benchmarked book. */
+    @Param({"1", "10"})
+    private int copies;
+
+    private Path bookFile;
+    private Path spillDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] bookBytes = Files.readAllBytes(BOOK_PATH);
+        bookFile = Files.createTempFile("book", ".txt");
+        try (OutputStream output = Files.newOutputStream(bookFile)) {
+            for (int i = 0; i < copies; i++) {
+                output.write(bookBytes);
+            }
+        }
+        spillDirectory = Files.createTempDirectory("ngrams");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(bookFile);
+        Files.deleteIfExists(spillDirectory);
+    }
+
+    @Benchmark
+    public List<TermCount> hashMap() throws IOException {
+        List<Map<String, Long>> counts = new ArrayList<>();
+        for (int length = 1; length <= 3; length++) {
+            counts.add(new HashMap<>());
+        }
+        try (Stream<String> lines = LineSpliterator.lines(bookFile, false)) {
+            lines.forEach(line -> {
+                List<String> words = WordTokenizer.words(line);
+                for (int length = 1; length <= 3; length++) {
+                    for (int i = 0; i + length <= words.size(); i++) {
+                        counts.get(length - 1).merge(String.join(" ", words.subList(i, i + length)), 1L, Long::sum);
+                    }
+                }
+            });
+        }
+
+        List<TermCount> trigrams = new ArrayList<>();
+        counts.get(2).forEach((term, count) -> trigrams.add(new TermCount(term, count)));
+        trigrams.sort(TermCount.BY_COUNT.reversed());
+        return trigrams.subList(0, Math.min(10, trigrams.size()));
+    }
+
+    @Benchmark
+    public List<TermCount> ngramCounter() throws IOException {
+        return countTopTrigrams(LARGE_BUDGET);
+    }
+
+    @Benchmark
+    public List<TermCount> spillingNgramCounter() throws IOException {
+        return countTopTrigrams(SMALL_BUDGET);
+    }
+
+    private List<TermCount> countTopTrigrams(long memoryBudget) throws IOException {
+        try (Stream<String> lines = LineSpliterator.lines(bookFile, false);
+             NgramCounter counter = lines.collect(NgramCounter.collector(3, memoryBudget, spillDirectory))) {
+            return counter.top(3, 10);
+        }
+    }
+
+}
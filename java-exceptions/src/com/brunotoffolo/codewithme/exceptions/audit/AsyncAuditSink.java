@@ -0,0 +1,172 @@
+package com.brunotoffolo.codewithme.exceptions.audit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records audit events into a ring buffer and hands them to another sink from
+ * a background thread, so the threads that perform the operations never wait
+ * for the console or the disk.
+ *
+ * The ring buffer is made of preallocated arrays, one for each value of an
+ * event, so recording an event only claims a sequence number, copies its
+ * values into the slot of that sequence and publishes it. Any number of
+ * threads can record events at the same time. The background thread reads the
+ * published events in sequence order and hands them to the downstream sink,
+ * where they are formatted and written.
+ *
+ * If the downstream sink can not keep up and the ring buffer becomes full, the
+ * recording threads wait for free slots, so no event is ever lost. Events
+ * recorded after the sink is closed are discarded.
+ *
+ * @author Bruno Toffolo
+ */
+public class AsyncAuditSink implements AuditSink {
+
+    /** Default number of events that can wait in the ring buffer. */
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Time for which the background thread sleeps when there is no event. */
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /** The slots read by the background thread are released every 256 events. */
+    private static final long RELEASE_INTERVAL = 255;
+
+    private final AuditSink downstream;
+    private final int mask;
+
+    private final AuditEventType[] types;
+    private final long[] numbers;
+    private final double[] amounts;
+    private final double[] balances;
+
+    /** Sequence of the event last published in each slot. */
+    private final AtomicLongArray published;
+
+    /** Next sequence to be claimed by a recording thread. */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** Next sequence to be read by the background thread. */
+    private volatile long consumed;
+
+    private volatile boolean closed;
+    private final Thread writer;
+
+    /**
+     * Creates a sink with the default capacity.
+     *
+     * @param downstream Sink to which the events are handed
+     */
+    public AsyncAuditSink(AuditSink downstream) {
+        this(downstream, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a sink and starts its background thread.
+     *
+     * @param downstream Sink to which the events are handed
+     * @param capacity Number of events that can wait in the ring buffer, which
+     *                 must be a power of two
+     */
+    public AsyncAuditSink(AuditSink downstream, int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity should be a power of two");
+        }
+
+        this.downstream = downstream;
+        this.mask = capacity - 1;
+        this.types = new AuditEventType[capacity];
+        this.numbers = new long[capacity];
+        this.amounts = new double[capacity];
+        this.balances = new double[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+
+        this.writer = new Thread(this::writeEvents, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void record(AuditEventType type, long number, double amount, double balance) {
+        if (closed) {
+            return;
+        }
+
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed > mask) {
+            if (!writer.isAlive()) {
+                return;
+            }
+            Thread.yield();
+        }
+
+        int slot = (int) sequence & mask;
+        types[slot] = type;
+        numbers[slot] = number;
+        amounts[slot] = amount;
+        balances[slot] = balance;
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Writes all the events recorded so far and stops the background thread.
+     * The downstream sink is closed afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        downstream.close();
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the background thread, which hands every published event to
+     * the downstream sink until the sink is closed and all the claimed events
+     * were written.
+     */
+    private void writeEvents() {
+        long next = 0;
+        while (true) {
+            long first = next;
+            while (published.get((int) next & mask) == next) {
+                int slot = (int) next & mask;
+                try {
+                    downstream.record(types[slot], numbers[slot], amounts[slot], balances[slot]);
+                } catch (RuntimeException e) {
+                    System.err.println("Error while writing audit event: " + e.getMessage());
+                }
+                next++;
+                if ((next & RELEASE_INTERVAL) == 0) {
+                    consumed = next;
+                }
+            }
+
+            if (next != first) {
+                consumed = next;
+            } else if (closed && next == claimed.get()) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.brunotoffolo.codewithme.exceptions.audit;
+
+/**
+ * Entry point of the audit of the accounts and credit cards, which records
+ * every operation performed on them.
+ *
+ * By default, the events of level {@link AuditLevel#INFO} and above are
+ * written to the console by an {@link AsyncAuditSink}, so the threads that
+ * perform the operations do not wait for the console output. The pending
+ * events are written when the JVM shuts down. Both the sink and the level can
+ * be replaced at any time.
+ *
+ * @author Bruno Toffolo
+ */
+public final class Audit {
+
+    private static volatile AuditSink sink;
+    private static volatile AuditLevel level = AuditLevel.INFO;
+
+    private Audit() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Records an event, if its level is enabled.
+     *
+     * @param type Kind of the event
+     * @param number Number of the account or card
+     * @param amount Amount of the operation
+     * @param balance Balance right after the operation
+     */
+    public static void record(AuditEventType type, long number, double amount, double balance) {
+        if (type.getLevel().compareTo(level) >= 0) {
+            getSink().record(type, number, amount, balance);
+        }
+    }
+
+    /**
+     * Gets the sink to which the events are handed.
+     *
+     * @return Audit sink
+     */
+    public static AuditSink getSink() {
+        AuditSink current = sink;
+        if (current == null) {
+            synchronized (Audit.class) {
+                current = sink;
+                if (current == null) {
+                    current = createDefaultSink();
+                    sink = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Sets the sink to which the events are handed. The previous sink is closed,
+     * so all the events already recorded by it are written.
+     *
+     * @param newSink Sink to be set
+     */
+    public static void setSink(AuditSink newSink) {
+        AuditSink previous;
+        synchronized (Audit.class) {
+            previous = sink;
+            sink = newSink;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Gets the lowest level of the recorded events.
+     *
+     * @return Audit level
+     */
+    public static AuditLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the lowest level of the recorded events.
+     *
+     * @param newLevel Level to be set
+     */
+    public static void setLevel(AuditLevel newLevel) {
+        level = newLevel;
+    }
+
+    private static AuditSink createDefaultSink() {
+        AsyncAuditSink defaultSink = new AsyncAuditSink(new ConsoleAuditSink(System.out));
+        Runtime.getRuntime().addShutdownHook(new Thread(defaultSink::close, "audit-shutdown"));
+        return defaultSink;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.brunotoffolo.codewithme.exceptions.audit;
+
+/**
+ * Kinds of events recorded by the audit, each one with its level and the
+ * format in which it is written as text.
+ *
+ * @author Bruno Toffolo
+ */
+public enum AuditEventType {
+
+    DEPOSIT(AuditLevel.INFO, "Account ", " | Deposited value: USD ", " | New balance: USD "),
+    WITHDRAWAL(AuditLevel.INFO, "Account ", " | Withdrawn value: USD ", " | Remaining balance: USD "),
+    PURCHASE(AuditLevel.INFO, "CC ", " | New purchase: USD ", " | Current balance: USD "),
+    DECLINED_WITHDRAWAL(AuditLevel.DEBUG, "Account ", " | Declined withdrawal: USD ", " | Balance: USD "),
+    DECLINED_PURCHASE(AuditLevel.DEBUG, "CC ", " | Declined purchase: USD ", " | Current balance: USD ");
+
+    private final AuditLevel level;
+    private final String targetLabel;
+    private final String amountLabel;
+    private final String balanceLabel;
+
+    AuditEventType(AuditLevel level, String targetLabel, String amountLabel, String balanceLabel) {
+        this.level = level;
+        this.targetLabel = targetLabel;
+        this.amountLabel = amountLabel;
+        this.balanceLabel = balanceLabel;
+    }
+
+    /**
+     * Gets the level of the events of this type.
+     *
+     * @return Event level
+     */
+    public AuditLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Writes an event of this type as a line of text, in the same format
+     * previously printed by the model classes.
+     *
+     * @param target Destination of the text
+     * @param number Number of the account or card
+     * @param amount Amount of the operation
+     * @param balance Balance right after the operation
+     */
+    public void format(StringBuilder target, long number, double amount, double balance) {
+        target.append(targetLabel).append(number)
+                .append(amountLabel).append(amount)
+                .append(balanceLabel).append(balance);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.brunotoffolo.codewithme.exceptions.audit;
+
+/**
+ * Levels of the audit events, from the most to the least verbose. Only the
+ * events whose level is at least the configured {@link Audit#getLevel() level}
+ * are recorded.
+ *
+ * @author Bruno Toffolo
+ */
+public enum AuditLevel {
+
+    /** Operations that were declined, which are frequent under heavy load. */
+    DEBUG,
+
+    /** Operations that were performed and changed a balance. */
+    INFO,
+
+    /** No event is recorded. */
+    OFF
+
+}
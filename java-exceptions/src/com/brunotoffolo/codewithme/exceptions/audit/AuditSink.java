@@ -0,0 +1,33 @@
+package com.brunotoffolo.codewithme.exceptions.audit;
+
+/**
+ * Destination of the audit events of the accounts and credit cards.
+ *
+ * Events are given as separate primitive values instead of as an object or a
+ * formatted message, so a sink can store them without allocating anything on
+ * the thread that performed the operation.
+ *
+ * @author Bruno Toffolo
+ */
+@FunctionalInterface
+public interface AuditSink extends AutoCloseable {
+
+    /**
+     * Records an event.
+     *
+     * @param type Kind of the event
+     * @param number Number of the account or card
+     * @param amount Amount of the operation
+     * @param balance Balance right after the operation
+     */
+    void record(AuditEventType type, long number, double amount, double balance);
+
+    /**
+     * Records all the pending events and releases the resources of the sink.
+     */
+    @Override
+    default void close() {
+        // Nothing to be released by default
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.brunotoffolo.codewithme.exceptions.audit;
+
+import java.io.PrintStream;
+
+/**
+ * Writes every audit event as a line of text into a print stream, on the
+ * thread that records it.
+ *
+ * @author Bruno Toffolo
+ */
+public class ConsoleAuditSink implements AuditSink {
+
+    private final PrintStream out;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Creates a sink that writes into the given stream.
+     *
+     * @param out Stream in which the events are written, usually System.out
+     */
+    public ConsoleAuditSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void record(AuditEventType type, long number, double amount, double balance) {
+        line.setLength(0);
+        type.format(line, number, amount, balance);
+        out.println(line);
+    }
+
+    @Override
+    public void close() {
+        out.flush();
+    }
+
+}
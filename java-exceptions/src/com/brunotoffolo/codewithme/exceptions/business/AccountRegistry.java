@@ -0,0 +1,171 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.Customer;
+import com.brunotoffolo.codewithme.exceptions.util.StripedLongMap;
+
+import java.util.function.Consumer;
+
+/**
+ * Registry of all the accounts of the bank, which can be looked up by their
+ * number or by the CPF of their customer. The credit cards of the accounts can
+ * also be looked up by their number.
+ *
+ * The registry is meant to hold millions of accounts and to be used by many
+ * threads at the same time. Accounts are kept in {@link StripedLongMap}s, so
+ * the keys are never boxed, lookups usually do not take any lock and the
+ * creation of accounts only locks a small part of the registry. A CPF is
+ * stored as the number formed by its 11 digits.
+ *
+ * An account is first registered by its number and only then by its CPF, so
+ * a lookup by CPF that runs at the same time as the creation of the account
+ * may not find it yet. Accounts are never removed from the registry.
+ *
+ * @author Bruno Toffolo
+ */
+public class AccountRegistry {
+
+    /** Number of digits of a CPF. */
+    private static final int CPF_DIGITS = 11;
+
+    private final StripedLongMap<Account> accountsByNumber;
+    private final StripedLongMap<Account> accountsByCpf;
+    private final StripedLongMap<CreditCard> cardsByNumber;
+
+    /**
+     * Creates an empty registry.
+     */
+    public AccountRegistry() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty registry sized to hold the given number of accounts
+     * without having to grow.
+     *
+     * @param expectedAccounts Number of accounts the registry is expected to hold
+     */
+    public AccountRegistry(int expectedAccounts) {
+        this.accountsByNumber = new StripedLongMap<>(expectedAccounts);
+        this.accountsByCpf = new StripedLongMap<>(expectedAccounts);
+        this.cardsByNumber = new StripedLongMap<>(expectedAccounts);
+    }
+
+    /**
+     * Opens a new account for the customer and registers it.
+     *
+     * @param number Number of the new account
+     * @param customer Customer the account belongs to
+     * @return Opened account
+     */
+    public Account open(int number, Customer customer) {
+        Account account = new Account(number, customer);
+        register(account);
+        return account;
+    }
+
+    /**
+     * Registers an existing account. If the customer already has an account,
+     * looking it up by CPF still finds the first registered one.
+     *
+     * @param account Account to be registered
+     */
+    public void register(Account account) {
+        long cpf = cpfKey(account.getCustomer().getCpf());
+        if (accountsByNumber.putIfAbsent(account.getNumber(), account) != null) {
+            throw new IllegalArgumentException("Account number " + account.getNumber() + " is already in use");
+        }
+        accountsByCpf.putIfAbsent(cpf, account);
+    }
+
+    /**
+     * Adds a credit card to a registered account, and registers the card so it
+     * can be looked up by its number.
+     *
+     * @param account Account the card belongs to
+     * @param card Card to be added
+     */
+    public void addCreditCard(Account account, CreditCard card) {
+        if (cardsByNumber.putIfAbsent(card.getNumber(), card) != null) {
+            throw new IllegalArgumentException("Credit card number " + card.getNumber() + " is already in use");
+        }
+        account.addCreditCard(card);
+    }
+
+    /**
+     * Gets the account with the given number.
+     *
+     * @param number Account number
+     * @return Account; null if there is no account with the number
+     */
+    public Account findByNumber(int number) {
+        return accountsByNumber.get(number);
+    }
+
+    /**
+     * Gets the account of the customer with the given CPF.
+     *
+     * @param cpf CPF of the customer, with or without its punctuation
+     * @return Account; null if the customer has no account
+     */
+    public Account findByCpf(String cpf) {
+        return accountsByCpf.get(cpfKey(cpf));
+    }
+
+    /**
+     * Gets the credit card with the given number.
+     *
+     * @param number Card number
+     * @return Credit card; null if there is no card with the number
+     */
+    public CreditCard findCardByNumber(long number) {
+        return cardsByNumber.get(number);
+    }
+
+    /**
+     * Gets the number of registered accounts.
+     *
+     * @return Number of accounts
+     */
+    public int size() {
+        return accountsByNumber.size();
+    }
+
+    /**
+     * Performs the given action for every registered account, in no specific
+     * order. Accounts opened during the iteration may or may not be seen.
+     *
+     * @param action Action to be performed for each account
+     */
+    public void forEach(Consumer<? super Account> action) {
+        accountsByNumber.forEach(action);
+    }
+
+    /**
+     * Converts a CPF into the number formed by its digits, ignoring the dots
+     * and the dash of its usual format (000.000.000-00).
+     *
+     * @param cpf CPF to be converted
+     * @return Digits of the CPF as a number
+     */
+    static long cpfKey(String cpf) {
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < cpf.length(); i++) {
+            char c = cpf.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key = key * 10 + (c - '0');
+                digits++;
+            } else if (c != '.' && c != '-') {
+                throw new IllegalArgumentException("Invalid character in CPF " + cpf);
+            }
+        }
+
+        if (digits != CPF_DIGITS) {
+            throw new IllegalArgumentException("CPF should have exactly " + CPF_DIGITS + " digits");
+        }
+        return key;
+    }
+
+}
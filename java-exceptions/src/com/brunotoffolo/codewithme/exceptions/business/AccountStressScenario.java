@@ -0,0 +1,145 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.model.AtomicBalance;
+import com.brunotoffolo.codewithme.exceptions.model.OperationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stress application to demonstrate that the balance of an account can be
+ * updated by many threads at the same time without creating or losing money.
+ *
+ * Many threads deposit and withdraw random amounts from the same balance, as
+ * ATMs and points of sale would do with a busy account. Each thread keeps its
+ * own total of the deposits and withdrawals that succeeded, and at the end the
+ * balance must be exactly the difference between them. The balance is also
+ * never allowed to go below the credit limit, no matter how the withdrawals
+ * are interleaved. The application exits with status 1 if either check fails.
+ *
+ * The operations are performed straight on the {@link AtomicBalance} used by
+ * the {@link com.brunotoffolo.codewithme.exceptions.model.Account} class, so
+ * the threads are not serialized by the console output of the account.
+ *
+ * @author Bruno Toffolo
+ */
+public class AccountStressScenario {
+
+    /** Credit limit of the stressed balance, in dollars. */
+    private static final double CREDIT_LIMIT = 2000.00;
+
+    /** Number of operations performed by each thread. */
+    private static final int OPERATIONS_PER_THREAD = 2000000;
+
+    /** Greatest amount of a single operation, in cents. */
+    private static final int MAX_AMOUNT_CENTS = 50000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        AtomicBalance balance = new AtomicBalance(CREDIT_LIMIT);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Totals>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long seed = i;
+            results.add(executor.submit(() -> {
+                start.await();
+                return hammer(balance, new SplittableRandom(seed));
+            }));
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+
+        Totals totals = new Totals();
+        for (Future<Totals> result : results) {
+            totals.merge(result.get());
+        }
+        long elapsed = System.nanoTime() - startTime;
+        executor.shutdown();
+
+        long operations = (long) threads * OPERATIONS_PER_THREAD;
+        long expectedCents = totals.depositedCents - totals.withdrawnCents;
+        long actualCents = Math.round(balance.get() * 100);
+
+        System.out.println(threads + " threads performed " + operations + " operations in " +
+                elapsed / 1000000 + " ms (" + operations * 1000000000L / elapsed + " ops/s)");
+        System.out.println("Deposits: " + totals.deposits + " | Withdrawals: " + totals.withdrawals +
+                " | Declined withdrawals: " + totals.declined);
+        System.out.println("Expected balance: USD " + expectedCents / 100.0 + " | Final balance: USD " + balance);
+        System.out.println("Lowest balance seen: USD " + totals.lowestCents / 100.0 +
+                " | Credit limit: USD " + CREDIT_LIMIT);
+
+        if (actualCents != expectedCents) {
+            System.err.println("Money was " + (actualCents > expectedCents ? "created" : "lost") +
+                    ": difference of USD " + (actualCents - expectedCents) / 100.0);
+            System.exit(1);
+        } else if (totals.lowestCents < -Math.round(CREDIT_LIMIT * 100)) {
+            System.err.println("Balance went below the credit limit");
+            System.exit(1);
+        } else {
+            System.out.println("No money was created or lost");
+        }
+    }
+
+    /**
+     * Performs random deposits and withdrawals, with the same probability, and
+     * sums the amounts of the ones that succeeded.
+     *
+     * @param balance Balance to be updated
+     * @param random Random number generator of the thread
+     * @return Totals of the operations performed by the thread
+     */
+    private static Totals hammer(AtomicBalance balance, SplittableRandom random) {
+        Totals totals = new Totals();
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            int amountCents = 1 + random.nextInt(MAX_AMOUNT_CENTS);
+            if (random.nextBoolean()) {
+                balance.add(amountCents / 100.0);
+                totals.deposits++;
+                totals.depositedCents += amountCents;
+                continue;
+            }
+
+            OperationResult result = balance.trySubtract(amountCents / 100.0);
+            if (result.isApproved()) {
+                totals.withdrawals++;
+                totals.withdrawnCents += amountCents;
+                totals.lowestCents = Math.min(totals.lowestCents, Math.round(result.getBalance() * 100));
+            } else {
+                totals.declined++;
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Counters of the operations performed by a thread, which are only merged
+     * after all the threads finish.
+     */
+    private static final class Totals {
+
+        private long deposits;
+        private long withdrawals;
+        private long declined;
+        private long depositedCents;
+        private long withdrawnCents;
+        private long lowestCents = Long.MAX_VALUE;
+
+        private void merge(Totals other) {
+            deposits += other.deposits;
+            withdrawals += other.withdrawals;
+            declined += other.declined;
+            depositedCents += other.depositedCents;
+            withdrawnCents += other.withdrawnCents;
+            lowestCents = Math.min(lowestCents, other.lowestCents);
+        }
+    }
+
+}
@@ -1,10 +1,13 @@
 package com.brunotoffolo.codewithme.exceptions.business;
 
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.ConsoleAuditSink;
 import com.brunotoffolo.codewithme.exceptions.exception.InsufficientFundsException;
 import com.brunotoffolo.codewithme.exceptions.model.Account;
 import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
 import com.brunotoffolo.codewithme.exceptions.model.Customer;
 
+import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Random;
@@ -26,6 +29,9 @@ public class ExceptionHandlingScenario {
     /** Customer used in the example scenario. */
     private static Customer customer;
 
+    /** Registry in which the accounts of the bank are kept. */
+    private static final AccountRegistry registry = new AccountRegistry();
+
     /** Used internally to generate random numbers. */
     private static final Random random = new Random();
 
@@ -37,6 +43,11 @@ public class ExceptionHandlingScenario {
      */
     public static void main(String[] args) {
 
+        // Operations on accounts and cards are recorded by the audit, which writes them
+        // asynchronously by default. As this scenario also prints its own messages, the
+        // operations are written right away so all the messages appear in order.
+        Audit.setSink(new ConsoleAuditSink(System.out));
+
         // John Doe started a new job, so let's create a new bank account for him.
         initializeCustomerAndAccount();
 
@@ -54,7 +65,7 @@ public class ExceptionHandlingScenario {
         CreditCard creditCard;
         if (numberOfCreditCards == 0) {
             creditCard = createCreditCard("Visa");
-            account.addCreditCard(creditCard);
+            registry.addCreditCard(account, creditCard);
         } else {
             creditCard = creditCards.get(0);
         }
@@ -120,7 +131,7 @@ public class ExceptionHandlingScenario {
 
         // Generate a new random account number
         int accountNumber = 1000000 + random.nextInt(9000000);
-        account = new Account(accountNumber, customer);
+        account = registry.open(accountNumber, customer);
 
         System.out.println(customer);
         System.out.println(account);
@@ -136,7 +147,8 @@ public class ExceptionHandlingScenario {
         // Creates a random six-digit PIN code and 16-digit credit card number
         int pin = (int) (100000 + 900000 * Math.random());
         long number = 1000000000000000L + (long) (random.nextDouble() * 9000000000000000L);
-        GregorianCalendar expirationDate = new GregorianCalendar(2025, 10, 01);
+        GregorianCalendar expirationDate = new GregorianCalendar();
+        expirationDate.add(Calendar.YEAR, 5);
 
         CreditCard card = new CreditCard(pin, expirationDate, 5000, brand, number);
         System.out.println("Credit card number " + number + " created with a USD 5000.00 limit");
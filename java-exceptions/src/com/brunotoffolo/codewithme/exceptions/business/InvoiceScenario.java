@@ -0,0 +1,155 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.invoice.BulkInvoiceWriter;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Application to demonstrate that the invoices written by a
+ * {@link BulkInvoiceWriter} have the exact same bytes as the ones written by
+ * {@link CreditCard#createInvoice(String)}.
+ *
+ * The invoices of cards with random purchases over the last years are written
+ * both ways, first with the default locale and then with the Thai locale, whose
+ * dates {@code createInvoice} formats in the Buddhist calendar, and the files
+ * are compared byte by byte. As both write the time at which the invoice was
+ * generated with its hour, the hour of that time is the only part allowed to
+ * differ, in case it changed between the two writes.
+ *
+ * @author Bruno Toffolo
+ */
+public class InvoiceScenario {
+
+    private static final int CARDS = 200;
+    private static final int PURCHASES_PER_CARD = 50;
+    private static final long FIRST_CARD_NUMBER = 4000000000000000L;
+
+    /** Period over which the purchases are spread, so they cover a few years. */
+    private static final long PERIOD = 3L * 365 * 24 * 60 * 60 * 1000;
+
+    private static final String[] DESCRIPTIONS = {"Coffee", "Books", "Café au lait", "Groceries", null};
+
+    private static final String GENERATION_PREFIX = "Invoice generated at ";
+
+    public static void main(String[] args) throws IOException {
+        List<CreditCard> cards = createCards();
+        Locale defaultLocale = Locale.getDefault(Locale.Category.FORMAT);
+
+        int differences = 0;
+        try {
+            for (Locale locale : Arrays.asList(defaultLocale, new Locale("th", "TH"))) {
+                // createInvoice can only be told the locale through the default one
+                Locale.setDefault(Locale.Category.FORMAT, locale);
+                differences += compareInvoices(cards, locale);
+            }
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, defaultLocale);
+        }
+
+        if (differences > 0) {
+            System.err.println(differences + " invoices were not written with the same bytes");
+            System.exit(1);
+        }
+        System.out.println("All the invoices were written with the same bytes");
+    }
+
+    /**
+     * Creates the cards of the scenario, with random purchases.
+     *
+     * @return New cards
+     */
+    private static List<CreditCard> createCards() {
+        Calendar expirationDate = new GregorianCalendar();
+        expirationDate.add(Calendar.YEAR, 5);
+
+        SplittableRandom random = new SplittableRandom(74L);
+        long now = System.currentTimeMillis();
+        List<CreditCard> cards = new ArrayList<>(CARDS);
+        for (int i = 0; i < CARDS; i++) {
+            CreditCard card = new CreditCard(123456, expirationDate, 50000, "Visa", FIRST_CARD_NUMBER + i);
+            long time = now - PERIOD;
+            double balance = 0;
+            for (int j = 0; j < PURCHASES_PER_CARD; j++) {
+                time += random.nextLong(PERIOD / PURCHASES_PER_CARD);
+                double amount = random.nextInt(100000) / 100.0;
+                balance += amount;
+                card.restorePurchase(time, amount, DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)], balance);
+            }
+            cards.add(card);
+        }
+        return cards;
+    }
+
+    /**
+     * Writes the invoices of the cards both ways, with the given locale, and
+     * counts the invoices that differ.
+     */
+    private static int compareInvoices(List<CreditCard> cards, Locale locale) throws IOException {
+        Path expected = Files.createTempDirectory("invoices");
+        Path actual = Files.createTempDirectory("invoices");
+        try {
+            for (CreditCard card : cards) {
+                card.createInvoice(expected.resolve(card.getNumber() + ".txt").toString());
+            }
+            new BulkInvoiceWriter(Charset.defaultCharset(), ZoneId.systemDefault(), locale)
+                    .writeEach(cards, card -> actual.resolve(card.getNumber() + ".txt"));
+
+            int differences = 0;
+            for (CreditCard card : cards) {
+                byte[] expectedBytes = Files.readAllBytes(expected.resolve(card.getNumber() + ".txt"));
+                byte[] actualBytes = Files.readAllBytes(actual.resolve(card.getNumber() + ".txt"));
+                if (!Arrays.equals(withoutGenerationHour(expectedBytes), withoutGenerationHour(actualBytes))) {
+                    differences++;
+                }
+            }
+
+            String sample = new String(Files.readAllBytes(actual.resolve(cards.get(0).getNumber() + ".txt")),
+                    Charset.defaultCharset());
+            System.out.println("Locale " + locale + ": " + (cards.size() - differences) + " of " + cards.size() +
+                    " invoices match, such as the one " + sample.substring(sample.lastIndexOf(GENERATION_PREFIX)));
+            return differences;
+        } finally {
+            delete(expected);
+            delete(actual);
+        }
+    }
+
+    /**
+     * Replaces the hour of the generation time at the end of an invoice, which
+     * is written as "dd/MM/yyyy, HH:MM", by spaces.
+     */
+    private static byte[] withoutGenerationHour(byte[] invoice) {
+        byte[] masked = invoice.clone();
+        // The generation time is the ASCII end of the invoice, so its hour follows the last ", "
+        for (int i = masked.length - 1; i > 0; i--) {
+            if (masked[i - 1] == ',' && masked[i] == ' ') {
+                Arrays.fill(masked, i + 1, Math.min(i + 3, masked.length), (byte) ' ');
+                break;
+            }
+        }
+        return masked;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.AuditLevel;
+import com.brunotoffolo.codewithme.exceptions.journal.Journal;
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.Customer;
+import com.brunotoffolo.codewithme.exceptions.model.Transaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Application to demonstrate that the balances of the accounts and the
+ * purchases of the credit cards can be rebuilt from a {@link Journal} after a
+ * crash.
+ *
+ * Random transactions are applied through a {@link TransactionPipeline} that
+ * journals them, with a small segment size so some segments are compacted into
+ * snapshots along the way. An incomplete record is then written at the end of
+ * the journal, as if the application had stopped in the middle of a write, and
+ * the journal is replayed into a new registry, whose balances and purchases
+ * must be the same as the ones of the original registry.
+ *
+ * @author Bruno Toffolo
+ */
+public class JournalRecoveryScenario {
+
+    private static final int ACCOUNTS = 10000;
+    private static final int TRANSACTIONS = 1000000;
+    private static final int FIRST_NUMBER = 1000000;
+    private static final long FIRST_CARD_NUMBER = 4000000000000000L;
+
+    /** Small segments, so the journal is compacted a few times. */
+    private static final long SEGMENT_SIZE = 8L << 20;
+
+    public static void main(String[] args) throws IOException {
+        // The audit would only flood the console with a million operations
+        Audit.setLevel(AuditLevel.OFF);
+
+        Path directory = Files.createTempDirectory("journal");
+        int differences;
+        try {
+            AccountRegistry registry = createRegistry();
+            long startTime = System.nanoTime();
+            try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+                TransactionPipeline pipeline = new TransactionPipeline(registry,
+                        Runtime.getRuntime().availableProcessors(), journal);
+                int declined = 0;
+                for (CompletableFuture<Double> result : pipeline.submitAll(randomTransactions().stream())) {
+                    if (result.handle((balance, e) -> e != null).join()) {
+                        declined++;
+                    }
+                }
+                pipeline.close();
+                System.out.println(TRANSACTIONS + " transactions journaled in " +
+                        (System.nanoTime() - startTime) / 1000000 + " ms, " + declined + " of them declined");
+            }
+
+            tearLastSegment(directory);
+
+            startTime = System.nanoTime();
+            AccountRegistry recovered = createRegistry();
+            try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+                journal.recover(recovered);
+            }
+            System.out.println("Journal replayed in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+
+            differences = compare(registry, recovered);
+            if (differences > 0) {
+                System.err.println(differences + " accounts or cards were not recovered correctly");
+            } else {
+                System.out.println("All the balances and purchases were recovered");
+            }
+        } finally {
+            delete(directory);
+        }
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a registry with the accounts and cards of the scenario, with no
+     * operation.
+     *
+     * @return New registry
+     */
+    private static AccountRegistry createRegistry() {
+        Calendar expirationDate = new GregorianCalendar();
+        expirationDate.add(Calendar.YEAR, 5);
+
+        AccountRegistry registry = new AccountRegistry(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = registry.open(FIRST_NUMBER + i, new Customer(String.format("%011d", i), "John", "Doe"));
+            registry.addCreditCard(account, new CreditCard(123456, expirationDate, 50000, "Visa", FIRST_CARD_NUMBER + i));
+        }
+        return registry;
+    }
+
+    private static List<Transaction> randomTransactions() {
+        SplittableRandom random = new SplittableRandom(74L);
+        List<Transaction> transactions = new ArrayList<>(TRANSACTIONS);
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            int target = random.nextInt(ACCOUNTS);
+            double amount = random.nextInt(100000) / 100.0;
+            switch (random.nextInt(3)) {
+                case 0:
+                    transactions.add(Transaction.deposit(FIRST_NUMBER + target, amount));
+                    break;
+                case 1:
+                    transactions.add(Transaction.withdrawal(FIRST_NUMBER + target, amount));
+                    break;
+                default:
+                    transactions.add(Transaction.purchase(FIRST_CARD_NUMBER + target, amount / 100, "Coffee"));
+                    break;
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Writes the beginning of a record at the end of the last segment, as a
+     * write interrupted by a crash would leave it.
+     */
+    private static void tearLastSegment(Path directory) throws IOException {
+        Path last = null;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path segment : segments) {
+                if (last == null || segment.compareTo(last) > 0) {
+                    last = segment;
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 57, 1, 2, 3, 4, 2, 0, 0}));
+        }
+    }
+
+    /**
+     * Counts the accounts and cards whose balances or purchases differ between
+     * two registries.
+     */
+    private static int compare(AccountRegistry expected, AccountRegistry actual) {
+        int differences = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = expected.findByNumber(FIRST_NUMBER + i);
+            if (account.getBalance() != actual.findByNumber(FIRST_NUMBER + i).getBalance()) {
+                differences++;
+            }
+
+            CreditCard card = expected.findCardByNumber(FIRST_CARD_NUMBER + i);
+            CreditCard recoveredCard = actual.findCardByNumber(FIRST_CARD_NUMBER + i);
+            if (card.getBalance() != recoveredCard.getBalance()
+                    || card.getPurchaseLog().size() != recoveredCard.getPurchaseLog().size()) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+}
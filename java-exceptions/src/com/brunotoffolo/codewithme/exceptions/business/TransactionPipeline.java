@@ -0,0 +1,354 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.exception.InsufficientFundsException;
+import com.brunotoffolo.codewithme.exceptions.journal.Journal;
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.OperationResult;
+import com.brunotoffolo.codewithme.exceptions.model.PurchaseLog;
+import com.brunotoffolo.codewithme.exceptions.model.Transaction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Applies transactions to the accounts and credit cards of a registry in
+ * batches, each one on the thread that owns the account or card.
+ *
+ * The accounts and cards are divided into shards by their numbers, and every
+ * shard is owned by a single thread, which is the only one that ever applies
+ * transactions to them. The submitted transactions are grouped by shard into
+ * batches, and each batch is handed to its shard through a bounded queue, so
+ * the submitting thread pays for one queue operation per batch instead of one
+ * per transaction. The shard thread then drains all the batches waiting in its
+ * queue at once and applies them in order.
+ *
+ * As the transactions of an account or card always go to the same shard, they
+ * are applied in the order they were submitted, and the results are the same
+ * as if they were applied one by one by the submitting thread. The outcome of
+ * each transaction is given by a {@link CompletableFuture}, which completes
+ * with the new balance or exceptionally with an
+ * {@link InsufficientFundsException} if the transaction was declined. As
+ * declines are common in this kind of load, the transactions are applied
+ * through the methods that report them without throwing, and the exception
+ * given to the future has no stack trace, which would only point to the shard
+ * thread anyway. The futures are completed by the shard threads, so any long
+ * action that depends on them should be run asynchronously.
+ *
+ * If the pipeline is given a {@link Journal}, each shard appends the approved
+ * transactions of a batch to the journal and commits them before completing
+ * their futures, so a transaction is only reported as approved once it is
+ * durable. The shards commit concurrently, so a single commit often covers the
+ * batches of several shards. If the journal can not be written, the futures of
+ * the approved transactions complete exceptionally with the
+ * {@link IOException}, although the transactions were already applied to the
+ * accounts and cards in memory.
+ *
+ * @author Bruno Toffolo
+ */
+public class TransactionPipeline implements AutoCloseable {
+
+    /** Greatest number of transactions handed to a shard at once. */
+    private static final int BATCH_SIZE = 256;
+
+    /** Number of batches that can wait in the queue of a shard. */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /** Batch that tells a shard thread to stop. */
+    private static final Batch SHUTDOWN = new Batch(0);
+
+    private final AccountRegistry registry;
+    private final Journal journal;
+    private final Shard[] shards;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pipeline with one shard per available core.
+     *
+     * @param registry Registry of the accounts and cards
+     */
+    public TransactionPipeline(AccountRegistry registry) {
+        this(registry, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a pipeline with the given number of shards, and starts the thread
+     * of each shard.
+     *
+     * @param registry Registry of the accounts and cards
+     * @param shardCount Number of shards
+     */
+    public TransactionPipeline(AccountRegistry registry, int shardCount) {
+        this(registry, shardCount, null);
+    }
+
+    /**
+     * Creates a pipeline with the given number of shards that records the
+     * approved transactions in a journal, and starts the thread of each shard.
+     *
+     * @param registry Registry of the accounts and cards
+     * @param shardCount Number of shards
+     * @param journal Journal of the approved transactions, or null to keep them
+     *                only in memory
+     */
+    public TransactionPipeline(AccountRegistry registry, int shardCount, Journal journal) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard should be created");
+        }
+
+        this.registry = registry;
+        this.journal = journal;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+            shards[i].start();
+        }
+    }
+
+    /**
+     * Submits a single transaction.
+     *
+     * @param transaction Transaction to be applied
+     * @return Future outcome of the transaction
+     */
+    public CompletableFuture<Double> submit(Transaction transaction) {
+        return submitAll(Stream.of(transaction)).get(0);
+    }
+
+    /**
+     * Submits a stream of transactions. Transactions on the same account or card
+     * are applied in the order of the stream.
+     *
+     * @param transactions Transactions to be applied
+     * @return Future outcome of each transaction, in the order of the stream
+     */
+    public List<CompletableFuture<Double>> submitAll(Stream<Transaction> transactions) {
+        if (closed) {
+            throw new IllegalStateException("Transaction pipeline is closed");
+        }
+
+        Batch[] pending = new Batch[shards.length];
+        List<CompletableFuture<Double>> results = new ArrayList<>();
+        transactions.forEachOrdered(transaction -> {
+            int shard = shardOf(transaction);
+            if (pending[shard] == null) {
+                pending[shard] = new Batch(BATCH_SIZE);
+            }
+
+            results.add(pending[shard].add(transaction));
+            if (pending[shard].isFull()) {
+                shards[shard].enqueue(pending[shard]);
+                pending[shard] = null;
+            }
+        });
+
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (pending[shard] != null) {
+                shards[shard].enqueue(pending[shard]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Applies all the transactions already submitted and stops the threads of
+     * the shards. No transaction should be submitted while the pipeline is
+     * being closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Shard shard : shards) {
+            shard.enqueue(SHUTDOWN);
+        }
+
+        boolean interrupted = false;
+        for (Shard shard : shards) {
+            while (shard.isAlive()) {
+                try {
+                    shard.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int shardOf(Transaction transaction) {
+        int hash = Long.hashCode(transaction.getTarget() * 0x9E3779B97F4A7C15L);
+        return Math.floorMod(hash, shards.length);
+    }
+
+    /**
+     * Applies a single transaction to its account or card, and adds it to the
+     * records to be journaled if it was approved.
+     *
+     * @param transaction Transaction to be applied
+     * @param records Records to be appended to the journal, or null if there is
+     *                no journal
+     * @param timestamp Time of the deposits and withdrawals
+     * @return Outcome of the transaction
+     */
+    private OperationResult apply(Transaction transaction, Journal.Batch records, long timestamp) {
+        OperationResult result;
+        if (transaction.isCardTransaction()) {
+            CreditCard card = registry.findCardByNumber(transaction.getTarget());
+            if (card == null) {
+                throw new IllegalArgumentException("Unknown credit card " + transaction.getTarget());
+            }
+            result = card.tryAddPurchase(transaction.getAmount(), transaction.getDescription());
+            if (records != null && result.isApproved()) {
+                // The purchase keeps its own date, which is the one journaled
+                PurchaseLog purchases = card.getPurchaseLog();
+                timestamp = purchases.getTime(purchases.size() - 1);
+            }
+        } else {
+            Account account = registry.findByNumber((int) transaction.getTarget());
+            if (account == null) {
+                throw new IllegalArgumentException("Unknown account " + transaction.getTarget());
+            }
+            result = transaction.getType() == Transaction.Type.DEPOSIT
+                    ? OperationResult.approved(account.deposit(transaction.getAmount()))
+                    : account.tryWithdraw(transaction.getAmount());
+        }
+
+        if (records != null && result.isApproved()) {
+            records.add(transaction.getType(), transaction.getTarget(), transaction.getAmount(),
+                    result.getBalance(), timestamp, transaction.getDescription());
+        }
+        return result;
+    }
+
+    /**
+     * Creates the exception that reports a declined transaction, without
+     * filling its stack trace.
+     *
+     * @param transaction Declined transaction
+     * @return Exception to be given to the future of the transaction
+     */
+    private static InsufficientFundsException declined(Transaction transaction) {
+        String message = transaction.isCardTransaction()
+                ? "Purchase amount is higher than the available limit"
+                : "Desired amount is higher than available amount";
+        return new InsufficientFundsException(message, null, false, false);
+    }
+
+    /**
+     * Transactions handed to a shard at once, along with their outcomes.
+     */
+    private static final class Batch {
+
+        private final Transaction[] transactions;
+        private final List<CompletableFuture<Double>> results;
+
+        private Batch(int capacity) {
+            this.transactions = new Transaction[capacity];
+            this.results = new ArrayList<>(capacity);
+        }
+
+        private CompletableFuture<Double> add(Transaction transaction) {
+            CompletableFuture<Double> result = new CompletableFuture<>();
+            transactions[results.size()] = transaction;
+            results.add(result);
+            return result;
+        }
+
+        private boolean isFull() {
+            return results.size() == transactions.length;
+        }
+    }
+
+    /**
+     * Thread that owns a shard and applies all the transactions routed to it.
+     */
+    private final class Shard extends Thread {
+
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final Journal.Batch records = journal == null ? null : journal.newBatch();
+        private final Object[] outcomes = new Object[BATCH_SIZE];
+
+        private Shard(int index) {
+            super("transaction-shard-" + index);
+            setDaemon(true);
+        }
+
+        private void enqueue(Batch batch) {
+            try {
+                queue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while submitting transactions", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Batch> drained = new ArrayList<>();
+            while (true) {
+                try {
+                    drained.add(queue.take());
+                } catch (InterruptedException e) {
+                    // Shard threads are only stopped by the shutdown batch
+                    continue;
+                }
+                queue.drainTo(drained);
+
+                for (Batch batch : drained) {
+                    if (batch == SHUTDOWN) {
+                        return;
+                    }
+                    applyBatch(batch);
+                }
+                drained.clear();
+            }
+        }
+
+        private void applyBatch(Batch batch) {
+            int size = batch.results.size();
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                try {
+                    outcomes[i] = apply(batch.transactions[i], records, timestamp);
+                } catch (RuntimeException e) {
+                    outcomes[i] = e;
+                }
+            }
+
+            IOException failure = null;
+            if (records != null && !records.isEmpty()) {
+                try {
+                    journal.append(records);
+                    journal.commit();
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    records.clear();
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                CompletableFuture<Double> result = batch.results.get(i);
+                Object outcome = outcomes[i];
+                outcomes[i] = null;
+                if (outcome instanceof RuntimeException) {
+                    result.completeExceptionally((RuntimeException) outcome);
+                } else if (!((OperationResult) outcome).isApproved()) {
+                    result.completeExceptionally(declined(batch.transactions[i]));
+                } else if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(((OperationResult) outcome).getBalance());
+                }
+            }
+        }
+    }
+
+}
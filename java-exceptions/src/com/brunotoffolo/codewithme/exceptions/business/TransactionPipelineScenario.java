@@ -0,0 +1,179 @@
+package com.brunotoffolo.codewithme.exceptions.business;
+
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.AuditLevel;
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.Customer;
+import com.brunotoffolo.codewithme.exceptions.model.OperationResult;
+import com.brunotoffolo.codewithme.exceptions.model.PurchaseLog;
+import com.brunotoffolo.codewithme.exceptions.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Application to demonstrate that a {@link TransactionPipeline} gives the same
+ * results as applying the transactions one by one on a single thread.
+ *
+ * The same random transactions are applied to two registries with the same
+ * accounts and cards: through a pipeline with one shard per core, and at least
+ * four so the transactions are split among shards on any machine, and then
+ * sequentially, in the order they were generated. The outcome of every
+ * transaction, the balance of every account and card and the amount and
+ * description of every purchase must be the same in both registries, and the
+ * application exits with status 1 otherwise.
+ *
+ * @author Bruno Toffolo
+ */
+public class TransactionPipelineScenario {
+
+    private static final int ACCOUNTS = 10000;
+    private static final int TRANSACTIONS = 1000000;
+    private static final int FIRST_NUMBER = 1000000;
+    private static final long FIRST_CARD_NUMBER = 4000000000000000L;
+
+    private static final String[] DESCRIPTIONS = {"Coffee", "Books", "Groceries", "Fuel"};
+
+    public static void main(String[] args) {
+        // The audit would only flood the console with a million operations
+        Audit.setLevel(AuditLevel.OFF);
+        List<Transaction> transactions = randomTransactions();
+
+        AccountRegistry pipelined = createRegistry();
+        long startTime = System.nanoTime();
+        double[] pipelinedOutcomes = new double[TRANSACTIONS];
+        try (TransactionPipeline pipeline = new TransactionPipeline(pipelined,
+                Math.max(4, Runtime.getRuntime().availableProcessors()))) {
+            List<CompletableFuture<Double>> results = pipeline.submitAll(transactions.stream());
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                // Declined transactions are kept as NaN, as no balance is given for them
+                pipelinedOutcomes[i] = results.get(i).handle((balance, e) -> e != null ? Double.NaN : balance).join();
+            }
+        }
+        System.out.println(TRANSACTIONS + " transactions applied by the pipeline in " +
+                (System.nanoTime() - startTime) / 1000000 + " ms");
+
+        AccountRegistry sequential = createRegistry();
+        startTime = System.nanoTime();
+        double[] sequentialOutcomes = new double[TRANSACTIONS];
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            OperationResult result = apply(sequential, transactions.get(i));
+            sequentialOutcomes[i] = result.isApproved() ? result.getBalance() : Double.NaN;
+        }
+        System.out.println(TRANSACTIONS + " transactions applied sequentially in " +
+                (System.nanoTime() - startTime) / 1000000 + " ms");
+
+        int differentOutcomes = 0;
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            if (Double.compare(pipelinedOutcomes[i], sequentialOutcomes[i]) != 0) {
+                differentOutcomes++;
+            }
+        }
+        int differences = compare(sequential, pipelined);
+
+        if (differentOutcomes > 0 || differences > 0) {
+            System.err.println(differentOutcomes + " transactions had different outcomes, and " +
+                    differences + " accounts or cards ended up different");
+            System.exit(1);
+        }
+        System.out.println("All the outcomes, balances and purchases are the same");
+    }
+
+    /**
+     * Creates a registry with the accounts and cards of the scenario, with no
+     * operation.
+     *
+     * @return New registry
+     */
+    private static AccountRegistry createRegistry() {
+        Calendar expirationDate = new GregorianCalendar();
+        expirationDate.add(Calendar.YEAR, 5);
+
+        AccountRegistry registry = new AccountRegistry(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = registry.open(FIRST_NUMBER + i, new Customer(String.format("%011d", i), "John", "Doe"));
+            registry.addCreditCard(account, new CreditCard(123456, expirationDate, 50000, "Visa", FIRST_CARD_NUMBER + i));
+        }
+        return registry;
+    }
+
+    private static List<Transaction> randomTransactions() {
+        SplittableRandom random = new SplittableRandom(74L);
+        List<Transaction> transactions = new ArrayList<>(TRANSACTIONS);
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            int target = random.nextInt(ACCOUNTS);
+            double amount = random.nextInt(100000) / 100.0;
+            switch (random.nextInt(3)) {
+                case 0:
+                    transactions.add(Transaction.deposit(FIRST_NUMBER + target, amount));
+                    break;
+                case 1:
+                    transactions.add(Transaction.withdrawal(FIRST_NUMBER + target, amount));
+                    break;
+                default:
+                    transactions.add(Transaction.purchase(FIRST_CARD_NUMBER + target, amount / 10,
+                            DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)]));
+                    break;
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Applies a transaction on the calling thread, through the same methods
+     * that the shards of the pipeline use.
+     */
+    private static OperationResult apply(AccountRegistry registry, Transaction transaction) {
+        if (transaction.isCardTransaction()) {
+            CreditCard card = registry.findCardByNumber(transaction.getTarget());
+            return card.tryAddPurchase(transaction.getAmount(), transaction.getDescription());
+        }
+
+        Account account = registry.findByNumber((int) transaction.getTarget());
+        return transaction.getType() == Transaction.Type.DEPOSIT
+                ? OperationResult.approved(account.deposit(transaction.getAmount()))
+                : account.tryWithdraw(transaction.getAmount());
+    }
+
+    /**
+     * Counts the accounts and cards whose balances or purchases differ between
+     * two registries. The times of the purchases are not compared, as they are
+     * the times at which each registry applied them.
+     */
+    private static int compare(AccountRegistry expected, AccountRegistry actual) {
+        int differences = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            if (expected.findByNumber(FIRST_NUMBER + i).getBalance() != actual.findByNumber(FIRST_NUMBER + i).getBalance()) {
+                differences++;
+            }
+
+            CreditCard card = expected.findCardByNumber(FIRST_CARD_NUMBER + i);
+            CreditCard actualCard = actual.findCardByNumber(FIRST_CARD_NUMBER + i);
+            if (card.getBalance() != actualCard.getBalance()
+                    || !samePurchases(card.getPurchaseLog(), actualCard.getPurchaseLog())) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    private static boolean samePurchases(PurchaseLog expected, PurchaseLog actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.getAmountCents(i) != actual.getAmountCents(i)
+                    || !Objects.equals(expected.getDescription(i), actual.getDescription(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -55,4 +55,24 @@ public class InsufficientFundsException extends Exception {
         super(message, cause);
     }
 
+    /**
+     * Creates a new exception with the given message and cause, with suppression
+     * and a stack trace enabled or disabled.
+     *
+     * Filling the stack trace is by far the most expensive part of creating an
+     * exception. When declined operations are common and the exception is only
+     * used to report the outcome, as done by the TransactionPipeline, it can be
+     * created with writableStackTrace set to false so no stack trace is filled.
+     *
+     * @param message The error message.
+     * @param cause The exception cause.
+     * @param enableSuppression Whether suppressed exceptions can be added.
+     * @param writableStackTrace Whether the stack trace should be filled.
+     * @see Exception#Exception(String, Throwable, boolean, boolean)
+     */
+    public InsufficientFundsException(String message, Throwable cause,
+                                      boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
 }
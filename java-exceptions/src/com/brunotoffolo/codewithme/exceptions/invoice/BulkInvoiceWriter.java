@@ -0,0 +1,154 @@
+package com.brunotoffolo.codewithme.exceptions.invoice;
+
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the invoices of many credit cards at once, such as at the end of the
+ * month, splitting the cards among the available cores.
+ *
+ * Each task renders the invoices of a group of cards with its own
+ * {@link InvoiceRenderer}, so the buffer of the renderer is reused for all the
+ * cards of the task, and writes them through a {@link FileChannel}. The
+ * invoices can either be written into one file per card, with the same name
+ * and contents that {@link CreditCard#createInvoice(String)} would give them,
+ * or into one file per batch of cards, in which the invoices of the batch are
+ * written one after the other with a single write. All the invoices written by
+ * a call have the same generation time.
+ *
+ * @author Bruno Toffolo
+ */
+public class BulkInvoiceWriter {
+
+    /** Number of cards whose invoices are written by each task, when there is one file per card. */
+    private static final int CARDS_PER_TASK = 256;
+
+    private final Charset charset;
+    private final ZoneId zone;
+    private final Locale locale;
+
+    /**
+     * Creates a writer that encodes the invoices with the platform charset and
+     * formats the dates in the default time zone and format locale, as
+     * {@code createInvoice} does.
+     */
+    public BulkInvoiceWriter() {
+        this(Charset.defaultCharset(), ZoneId.systemDefault(), Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param charset Charset in which the invoices are encoded
+     * @param zone Time zone in which the dates are formatted
+     * @param locale Locale whose calendar and digits are used to format the dates
+     */
+    public BulkInvoiceWriter(Charset charset, ZoneId zone, Locale locale) {
+        // Fails right away if the charset can not be used by the renderers
+        new InvoiceRenderer(charset, zone, locale);
+
+        this.charset = charset;
+        this.zone = zone;
+        this.locale = locale;
+    }
+
+    /**
+     * Writes the invoice of each card into its own file.
+     *
+     * @param cards Cards whose invoices are written
+     * @param fileOf Gives the file into which the invoice of a card is written
+     * @throws IOException If any of the invoices could not be written
+     */
+    public void writeEach(List<CreditCard> cards, Function<? super CreditCard, Path> fileOf) throws IOException {
+        Instant now = Instant.now();
+        int tasks = (cards.size() + CARDS_PER_TASK - 1) / CARDS_PER_TASK;
+        run(tasks, task -> {
+            InvoiceRenderer renderer = new InvoiceRenderer(charset, zone, locale);
+            byte[] generationTime = renderer.formatGenerationTime(now);
+
+            int end = Math.min(cards.size(), (task + 1) * CARDS_PER_TASK);
+            for (int i = task * CARDS_PER_TASK; i < end; i++) {
+                CreditCard card = cards.get(i);
+                write(fileOf.apply(card), renderer.render(card, generationTime));
+            }
+        });
+    }
+
+    /**
+     * Writes the invoices of each batch of cards into a single file, in the
+     * order of the cards.
+     *
+     * @param cards Cards whose invoices are written
+     * @param batchSize Number of cards in each batch
+     * @param fileOfBatch Gives the file into which the invoices of a batch are
+     *                    written, from the index of the batch
+     * @throws IOException If any of the files could not be written
+     */
+    public void writeBatches(List<CreditCard> cards, int batchSize, IntFunction<Path> fileOfBatch) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batches should have at least one card");
+        }
+
+        Instant now = Instant.now();
+        int batches = (cards.size() + batchSize - 1) / batchSize;
+        run(batches, batch -> {
+            InvoiceRenderer renderer = new InvoiceRenderer(charset, zone, locale);
+            byte[] generationTime = renderer.formatGenerationTime(now);
+
+            ByteBuffer invoices = null;
+            int end = Math.min(cards.size(), (batch + 1) * batchSize);
+            for (int i = batch * batchSize; i < end; i++) {
+                invoices = renderer.append(cards.get(i), generationTime);
+            }
+            write(fileOfBatch.apply(batch), invoices);
+        });
+    }
+
+    /**
+     * Runs the tasks in parallel, throwing the first I/O error found.
+     */
+    private static void run(int tasks, TaskBody body) throws IOException {
+        try {
+            IntStream.range(0, tasks).parallel().forEach(task -> {
+                try {
+                    body.run(task);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void write(Path file, ByteBuffer content) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /**
+     * Work of a single task, which may fail with an I/O error.
+     */
+    private interface TaskBody {
+        void run(int task) throws IOException;
+    }
+
+}
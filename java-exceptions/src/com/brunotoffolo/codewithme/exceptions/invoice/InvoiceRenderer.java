@@ -0,0 +1,326 @@
+package com.brunotoffolo.codewithme.exceptions.invoice;
+
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.Money;
+import com.brunotoffolo.codewithme.exceptions.model.PurchaseLog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.chrono.Chronology;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DecimalStyle;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Renders the invoice of a credit card into a reusable byte buffer, with the
+ * exact same bytes that {@link CreditCard#createInvoice(String)} writes.
+ *
+ * The invoice is encoded straight into the buffer instead of being built as
+ * strings and handed to a writer. Amounts that are a whole number of cents,
+ * which are almost all of them, are written digit by digit, and the other ones
+ * fall back to {@link Double#toString(double)}, so both give the same digits.
+ * Purchase dates are formatted once per day, as consecutive purchases are
+ * usually made on the same day, with the calendar and digits of the given
+ * locale, as the {@link java.text.SimpleDateFormat} of {@code createInvoice}
+ * formats them in the Buddhist calendar for Thai, for example. Text is encoded with the given charset, which
+ * is the platform charset used by the {@link java.io.FileWriter} of
+ * {@code createInvoice} by default, and must encode ASCII characters as
+ * themselves, so ASCII text can be copied without going through the encoder.
+ *
+ * A renderer is not thread safe, as it reuses its buffer for every invoice.
+ * Each thread should have its own renderer.
+ *
+ * @author Bruno Toffolo
+ */
+public class InvoiceRenderer {
+
+    private static final byte[] SEPARATOR = ascii("--------------------------------------------\r\n");
+    private static final byte[] PURCHASES_HEADER = ascii("PURCHASES\r\nDate\t\tAmount\tDescription\r\n");
+    private static final byte[] NULL = ascii("null");
+
+    /** Largest amount written by {@link Double#toString(double)} without an exponent. */
+    private static final double MAX_PLAIN_AMOUNT = 1e7;
+
+    private final Charset charset;
+    private final ZoneId zone;
+    private final DateTimeFormatter dateFormat;
+
+    /** Same pattern as {@code createInvoice}, with the month where minutes would be expected. */
+    private final DateTimeFormatter dateTimeFormat;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+
+    /** Formatted date of the day of the last purchase, valid from its start until its end. */
+    private byte[] date;
+    private long dayStart = Long.MAX_VALUE;
+    private long dayEnd = Long.MIN_VALUE;
+
+    /**
+     * Creates a renderer that encodes the invoices with the platform charset and
+     * formats the dates in the default time zone and format locale, as
+     * {@code createInvoice} does.
+     */
+    public InvoiceRenderer() {
+        this(Charset.defaultCharset(), ZoneId.systemDefault(), Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    /**
+     * Creates a renderer.
+     *
+     * @param charset Charset in which the invoices are encoded
+     * @param zone Time zone in which the dates are formatted
+     * @param locale Locale whose calendar and digits are used to format the dates
+     */
+    public InvoiceRenderer(Charset charset, ZoneId zone, Locale locale) {
+        if (!isAsciiCompatible(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " should encode ASCII characters as ASCII");
+        }
+
+        this.charset = charset;
+        this.zone = zone;
+        this.dateFormat = formatter("dd/MM/yyyy", locale);
+        this.dateTimeFormat = formatter("dd/MM/yyyy, HH:MM", locale);
+        reset();
+    }
+
+    /**
+     * Formats the time at which invoices are generated, which is written at the
+     * end of every invoice, so it can be formatted only once for many invoices.
+     *
+     * @param time Time at which the invoices are generated
+     * @return Formatted time, to be given to {@link #render(CreditCard, byte[])}
+     */
+    public byte[] formatGenerationTime(Instant time) {
+        return encode(dateTimeFormat.format(ZonedDateTime.ofInstant(time, zone)));
+    }
+
+    /**
+     * Renders the invoice of a card. The returned buffer is only valid until
+     * the next invoice is rendered.
+     *
+     * @param card Credit card whose invoice is rendered
+     * @param generationTime Formatted time at which the invoice is generated
+     * @return Buffer with the invoice, from its position to its limit
+     */
+    public ByteBuffer render(CreditCard card, byte[] generationTime) {
+        buffer.clear();
+        return appendTo(card, generationTime);
+    }
+
+    /**
+     * Renders the invoice of a card after the invoices already rendered since
+     * the last call to {@link #render(CreditCard, byte[])} or {@link #reset()},
+     * so the invoices of many cards can be written at once.
+     *
+     * @param card Credit card whose invoice is rendered
+     * @param generationTime Formatted time at which the invoice is generated
+     * @return Buffer with all the invoices rendered so far, from its position to its limit
+     */
+    public ByteBuffer append(CreditCard card, byte[] generationTime) {
+        buffer.position(buffer.limit()).limit(buffer.capacity());
+        return appendTo(card, generationTime);
+    }
+
+    /**
+     * Discards all the invoices rendered so far.
+     */
+    public void reset() {
+        buffer.clear().limit(0);
+    }
+
+    private ByteBuffer appendTo(CreditCard card, byte[] generationTime) {
+        putText("INVOICE FOR: ");
+        putText(card.getBrand());
+        putByte(' ');
+        putLong(card.getNumber());
+        putNewLine();
+        put(SEPARATOR);
+        put(PURCHASES_HEADER);
+
+        PurchaseLog purchases = card.getPurchaseLog();
+        for (int i = 0; i < purchases.size(); i++) {
+            putDate(purchases.getTime(i));
+            putByte('\t');
+            putAmount(Money.USD.toMajor(purchases.getAmountCents(i)));
+            putByte('\t');
+            putText(purchases.getDescription(i));
+            putNewLine();
+        }
+
+        put(SEPARATOR);
+        putText("TOTAL AMOUNT: USD ");
+        putAmount(card.getBalance());
+        putByte('\n');
+        putText("Remaining limit: USD ");
+        putAmount(card.getAvailableLimit());
+        putByte('\n');
+        put(SEPARATOR);
+        putText("Invoice generated at ");
+        put(generationTime);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes a date as {@code dd/MM/yyyy}, formatting it only if it is not in
+     * the same day as the previous one.
+     */
+    private void putDate(long millis) {
+        if (millis < dayStart || millis >= dayEnd) {
+            LocalDate day = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+            dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            date = encode(dateFormat.format(day));
+        }
+        put(date);
+    }
+
+    /**
+     * Writes an amount with the same digits as {@link Double#toString(double)}.
+     * Amounts that are a whole number of cents are written without creating a
+     * string, as their shortest decimal representation is their value in cents.
+     */
+    private void putAmount(double amount) {
+        long cents = Math.round(amount * 100);
+        boolean plain = Math.abs(amount) < MAX_PLAIN_AMOUNT && cents / 100.0 == amount
+                && (amount != 0 || Double.doubleToRawLongBits(amount) == 0);
+        if (!plain) {
+            putText(Double.toString(amount));
+            return;
+        }
+
+        if (cents < 0) {
+            putByte('-');
+            cents = -cents;
+        }
+        putLong(cents / 100);
+        putByte('.');
+        int fraction = (int) (cents % 100);
+        if (fraction % 10 == 0) {
+            putByte('0' + fraction / 10);
+        } else {
+            putByte('0' + fraction / 10);
+            putByte('0' + fraction % 10);
+        }
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                putText(Long.toString(value));
+                return;
+            }
+            putByte('-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long power = 10; digits < 19 && value >= power; power *= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        int end = buffer.position() + digits;
+        byte[] array = buffer.array();
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            array[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Writes a text as string concatenation would, including "null" for a null
+     * text, encoded in the charset of the renderer.
+     */
+    private void putText(String text) {
+        if (text == null) {
+            put(NULL);
+            return;
+        }
+
+        int length = text.length();
+        ensureCapacity(length);
+        byte[] array = buffer.array();
+        int position = buffer.position();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                put(encode(text));
+                return;
+            }
+            array[position + i] = (byte) c;
+        }
+        buffer.position(position + length);
+    }
+
+    private void putNewLine() {
+        ensureCapacity(2);
+        buffer.put((byte) '\r').put((byte) '\n');
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (buffer.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + needed));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private byte[] encode(String text) {
+        return text.getBytes(charset);
+    }
+
+    /**
+     * Creates a formatter with the same calendar and digits that a
+     * {@link java.text.SimpleDateFormat} uses for the locale. The calendar is
+     * taken from {@link Calendar}, which picks the Buddhist calendar for th_TH,
+     * as {@link Chronology#ofLocale(Locale)} only does so when the locale has a
+     * calendar extension. The Japanese imperial calendar of ja_JP_JP is not
+     * matched, as {@code SimpleDateFormat} writes its years without padding.
+     */
+    private static DateTimeFormatter formatter(String pattern, Locale locale) {
+        String calendar = Calendar.getInstance(locale).getCalendarType();
+        Chronology chronology = "gregory".equals(calendar) ? IsoChronology.INSTANCE
+                : Chronology.ofLocale(Locale.forLanguageTag("und-u-ca-" + calendar));
+        return DateTimeFormatter.ofPattern(pattern, locale)
+                .withChronology(chronology)
+                .withDecimalStyle(DecimalStyle.of(locale));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        char[] characters = new char[0x80];
+        for (int i = 0; i < characters.length; i++) {
+            characters[i] = (char) i;
+        }
+        String text = new String(characters);
+        return Arrays.equals(text.getBytes(charset), ascii(text));
+    }
+
+}
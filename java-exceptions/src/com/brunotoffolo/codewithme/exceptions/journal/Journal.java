@@ -0,0 +1,799 @@
+package com.brunotoffolo.codewithme.exceptions.journal;
+
+import com.brunotoffolo.codewithme.exceptions.business.AccountRegistry;
+import com.brunotoffolo.codewithme.exceptions.model.Account;
+import com.brunotoffolo.codewithme.exceptions.model.CreditCard;
+import com.brunotoffolo.codewithme.exceptions.model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of the approved deposits, withdrawals and
+ * purchases, from which the balances of the accounts and the purchases of the
+ * credit cards are rebuilt when the application starts again.
+ *
+ * Every record holds the balance right after its operation, so the records
+ * can be replayed without checking any limit, and a record can be appended in
+ * any order in relation to the records of other accounts and cards. The
+ * records are appended in batches to an in-memory buffer, and they only become
+ * durable when {@link #commit()} is called. Commits are grouped: the thread
+ * that gets to commit first writes and forces everything appended so far by
+ * all the threads, and the threads that were waiting for it return right away
+ * if their records were already forced. A single {@code force} thus covers the
+ * batches of many threads, which is what allows the journal to keep up with
+ * the {@link com.brunotoffolo.codewithme.exceptions.business.TransactionPipeline}.
+ *
+ * The log is divided into segment files. When a segment grows beyond the
+ * segment size, it is sealed and a new one is started, and the sealed segments
+ * are compacted in the background into a snapshot, which holds only the last
+ * balance of every account and the purchases of every card. After that the
+ * sealed segments are deleted, so the replay at startup only reads the latest
+ * snapshot and the segments written after it.
+ *
+ * Each record is protected by a checksum. If the application stops in the
+ * middle of a write, the incomplete records at the end of the last segment are
+ * discarded when the journal is opened again, as they were never committed.
+ *
+ * If writing or forcing the records fails, it is unknown which of them reached
+ * the disk, so the journal fails for good: every commit from then on throws,
+ * and the records appended after the failure are discarded, as they could never
+ * be committed. The journal should then be closed and opened again, which
+ * discards the incomplete records left at the end of the segment.
+ *
+ * @author Bruno Toffolo
+ */
+public class Journal implements Closeable {
+
+    /** Default size after which a segment is sealed, in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    /** Identifies a snapshot file ("CWJS"). */
+    private static final int SNAPSHOT_MAGIC = 0x43574A53;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** Length and checksum that precede the payload of every record. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** Type, number, amount, balance and timestamp of a record. */
+    private static final int RECORD_FIXED_SIZE = 1 + 8 + 8 + 8 + 8;
+
+    /** Greatest payload accepted when reading, to reject corrupted lengths. */
+    private static final int MAX_PAYLOAD_SIZE = 1 << 20;
+
+    private static final Transaction.Type[] TYPES = Transaction.Type.values();
+
+    private final Path directory;
+    private final long segmentSize;
+
+    /** Guards the pending buffer and the appended counter. */
+    private final Object appendLock = new Object();
+
+    /** Held by the thread that writes and forces the pending records. */
+    private final Object commitLock = new Object();
+
+    /** Records appended but not yet written, guarded by the append lock. */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+
+    /** Buffer swapped with the pending one on commit, guarded by the commit lock. */
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+
+    /** Number of bytes ever appended, guarded by the append lock. */
+    private long appended;
+
+    /** Number of bytes ever appended that were already forced to the disk. */
+    private volatile long durable;
+
+    /** Segment being written and its index, guarded by the commit lock. */
+    private FileChannel channel;
+    private long segment;
+
+    /** Index of the latest snapshot found when the journal was opened. */
+    private final long openedSnapshot;
+
+    private final ExecutorService compactor;
+    private Future<?> lastCompaction;
+    private volatile boolean closed;
+
+    /** Error that left the current segment with an unknown part of the records, if any. */
+    private volatile IOException failure;
+
+    private Journal(Path directory, long segmentSize, long openedSnapshot, long segment, FileChannel channel) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.openedSnapshot = openedSnapshot;
+        this.segment = segment;
+        this.channel = channel;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the journal kept in a directory, with the default segment size.
+     *
+     * @param directory Directory of the journal, which is created if needed
+     * @return Opened journal
+     * @throws IOException If the journal can not be read or is corrupted
+     */
+    public static Journal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal kept in a directory, discarding the incomplete records
+     * at the end of its last segment. New records are appended to that segment.
+     *
+     * @param directory Directory of the journal, which is created if needed
+     * @param segmentSize Size after which a segment is sealed, in bytes
+     * @return Opened journal
+     * @throws IOException If the journal can not be read or is corrupted
+     */
+    public static Journal open(Path directory, long segmentSize) throws IOException {
+        if (segmentSize < 1 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size should be between 1 and " + Integer.MAX_VALUE + " bytes");
+        }
+
+        Files.createDirectories(directory);
+        long snapshot = latestIndex(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long lastSegment = Math.max(latestIndex(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX), Math.max(snapshot, 0));
+
+        FileChannel channel = FileChannel.open(segmentPath(directory, lastSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long valid = replay(readFully(channel), null);
+            if (valid < channel.size()) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            channel.position(valid);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new Journal(directory, segmentSize, snapshot, lastSegment, channel);
+    }
+
+    /**
+     * Rebuilds the balances of the accounts and the purchases of the credit
+     * cards of a registry from the latest snapshot and the segments written
+     * after it. The registry should already hold all the accounts and cards,
+     * with no purchase, and this method should be called before any record is
+     * appended.
+     *
+     * @param registry Registry of the accounts and cards
+     * @throws IOException If the journal can not be read, is corrupted or has
+     *                     records of accounts or cards not in the registry
+     */
+    public void recover(AccountRegistry registry) throws IOException {
+        RecordHandler restore = record -> restore(registry, record);
+        if (openedSnapshot >= 0) {
+            readSnapshot(snapshotPath(directory, openedSnapshot), restore);
+        }
+
+        synchronized (commitLock) {
+            for (long index = Math.max(openedSnapshot, 0); index <= segment; index++) {
+                Path path = segmentPath(directory, index);
+                if (Files.exists(path)) {
+                    readSegment(path, restore);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a batch to which records can be added before they are appended.
+     * A batch can be reused after it is appended, and should not be shared by
+     * threads.
+     *
+     * @return Empty batch
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Appends all the records of a batch and clears it. The records are only
+     * durable after {@link #commit()} returns. After the journal failed, the
+     * records are discarded, as committing them throws anyway.
+     *
+     * @param batch Records to be appended
+     */
+    public void append(Batch batch) {
+        ByteBuffer records = batch.buffer;
+        records.flip();
+        synchronized (appendLock) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (failure != null) {
+                records.clear();
+                return;
+            }
+            if (pending.remaining() < records.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + records.remaining()));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            appended += records.remaining();
+            pending.put(records);
+        }
+        records.clear();
+    }
+
+    /**
+     * Writes and forces to the disk all the records appended so far, including
+     * the ones appended by other threads, unless another thread already did.
+     *
+     * @throws IOException If the records could not be written, now or by an
+     *                     earlier commit, or if they filled the segment and the
+     *                     compaction of the previously sealed segments had failed
+     */
+    public void commit() throws IOException {
+        checkNotFailed();
+        long target;
+        synchronized (appendLock) {
+            target = appended;
+        }
+        if (durable >= target) {
+            return;
+        }
+
+        synchronized (commitLock) {
+            if (durable >= target) {
+                return;
+            }
+
+            writePending();
+            if (channel.position() >= segmentSize) {
+                roll();
+            }
+        }
+    }
+
+    /**
+     * Commits all the records appended so far, seals the current segment and
+     * waits until all the sealed segments are compacted into a snapshot, so the
+     * next replay only reads that snapshot.
+     *
+     * @throws IOException If the records or the snapshot could not be written
+     */
+    public void snapshot() throws IOException {
+        Future<?> compaction;
+        synchronized (commitLock) {
+            writePending();
+            roll();
+            compaction = lastCompaction;
+        }
+
+        awaitCompaction(compaction);
+    }
+
+    /**
+     * Commits all the records appended so far, waits for the compaction in
+     * progress and closes the current segment.
+     *
+     * @throws IOException If the records could not be written or the last
+     *                     compaction failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        Future<?> compaction;
+        try {
+            commit();
+        } finally {
+            compactor.shutdown();
+            boolean interrupted = false;
+            while (!compactor.isTerminated()) {
+                try {
+                    compactor.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            synchronized (commitLock) {
+                channel.close();
+                compaction = lastCompaction;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        awaitCompaction(compaction);
+    }
+
+    /**
+     * Swaps the pending buffer with an empty one, and writes and forces its
+     * records to the current segment. Must be called with the commit lock held.
+     *
+     * A failure marks the journal as failed, and the records of the buffer are
+     * dropped either way, so they are neither written again nor left behind to
+     * be swapped back in as pending records.
+     */
+    private void writePending() throws IOException {
+        checkNotFailed();
+        long written;
+        synchronized (appendLock) {
+            written = appended;
+            ByteBuffer full = pending;
+            pending = writing;
+            writing = full;
+        }
+
+        try {
+            writing.flip();
+            while (writing.hasRemaining()) {
+                channel.write(writing);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writing.clear();
+        }
+        durable = written;
+    }
+
+    private void checkNotFailed() throws IOException {
+        IOException cause = failure;
+        if (cause != null) {
+            throw new IOException("Journal failed to write its records and should be opened again", cause);
+        }
+    }
+
+    /**
+     * Seals the current segment, which must have been forced, starts a new one
+     * and schedules the compaction of the sealed segments. Must be called with
+     * the commit lock held.
+     *
+     * The previous compaction is waited for first, so compactions do not pile
+     * up behind a slow disk and a failed one is reported instead of being
+     * lost. The failure is reported only once: the next roll schedules a new
+     * compaction, which covers the segments the failed one did not.
+     */
+    private void roll() throws IOException {
+        Future<?> previous = lastCompaction;
+        lastCompaction = null;
+        awaitCompaction(previous);
+
+        channel.close();
+        segment++;
+        channel = FileChannel.open(segmentPath(directory, segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        long snapshot = segment;
+        lastCompaction = compactor.submit(() -> {
+            compact(snapshot);
+            return null;
+        });
+    }
+
+    /**
+     * Waits for a compaction to end, if there is one.
+     *
+     * @throws IOException If the compaction failed
+     */
+    private static void awaitCompaction(Future<?> compaction) throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the snapshot", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Snapshot could not be written", e.getCause());
+        }
+    }
+
+    /**
+     * Writes the snapshot that covers all the segments before the given index,
+     * from the previous snapshot and the segments after it, and deletes the
+     * files it replaces.
+     *
+     * @param snapshot Index of the snapshot, which is the index of the first
+     *                 segment it does not cover
+     */
+    private void compact(long snapshot) throws IOException {
+        long previous = latestIndex(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Map<Long, Record> accounts = new LinkedHashMap<>();
+        Map<Long, List<Record>> cards = new LinkedHashMap<>();
+        RecordHandler merge = record -> {
+            if (record.type == Transaction.Type.PURCHASE) {
+                cards.computeIfAbsent(record.number, number -> new ArrayList<>()).add(record);
+            } else {
+                accounts.put(record.number, record);
+            }
+        };
+
+        if (previous >= 0) {
+            readSnapshot(snapshotPath(directory, previous), merge);
+        }
+        for (long index = Math.max(previous, 0); index < snapshot; index++) {
+            Path path = segmentPath(directory, index);
+            if (Files.exists(path)) {
+                readSegment(path, merge);
+            }
+        }
+
+        int count = accounts.size();
+        for (List<Record> purchases : cards.values()) {
+            count += purchases.size();
+        }
+
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + String.format("%010d", snapshot) + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Batch batch = new Batch();
+            batch.buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(snapshot).putInt(count);
+            for (Record account : accounts.values()) {
+                batch.add(account);
+                batch.drainTo(out);
+            }
+            for (List<Record> purchases : cards.values()) {
+                for (Record purchase : purchases) {
+                    batch.add(purchase);
+                    batch.drainTo(out);
+                }
+            }
+            batch.flushTo(out);
+            out.force(true);
+        }
+        Files.move(temporary, snapshotPath(directory, snapshot), StandardCopyOption.ATOMIC_MOVE);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long index = Math.max(indexOf(name, SEGMENT_PREFIX, SEGMENT_SUFFIX), indexOf(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+                if (index >= 0 && index < snapshot) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a record to the account or card of a registry.
+     */
+    private static void restore(AccountRegistry registry, Record record) throws IOException {
+        if (record.type == Transaction.Type.PURCHASE) {
+            CreditCard card = registry.findCardByNumber(record.number);
+            if (card == null) {
+                throw new IOException("Journal has a purchase of unknown credit card " + record.number);
+            }
+            card.restorePurchase(record.timestamp, record.amount, record.description, record.balance);
+            return;
+        }
+
+        Account account = registry.findByNumber((int) record.number);
+        if (account == null) {
+            throw new IOException("Journal has a " + record.type + " of unknown account " + record.number);
+        }
+        account.restoreBalance(record.balance);
+    }
+
+    /**
+     * Reads all the records of a sealed or current segment, which must all be
+     * complete.
+     */
+    private static void readSegment(Path path, RecordHandler handler) throws IOException {
+        ByteBuffer content;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            content = readFully(in);
+        }
+        if (replay(content, handler) < content.limit()) {
+            throw new IOException("Journal segment " + path + " is corrupted");
+        }
+    }
+
+    /**
+     * Reads all the records of a snapshot, checking its header and the number
+     * of records.
+     */
+    private static void readSnapshot(Path path, RecordHandler handler) throws IOException {
+        ByteBuffer content;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            content = readFully(in);
+        }
+        if (content.remaining() < 20 || content.getInt() != SNAPSHOT_MAGIC || content.getInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Journal snapshot " + path + " is not valid");
+        }
+        content.getLong();
+        int count = content.getInt();
+
+        CountingHandler counter = new CountingHandler(handler);
+        if (replay(content, counter) < content.limit() || counter.count != count) {
+            throw new IOException("Journal snapshot " + path + " is corrupted");
+        }
+    }
+
+    /**
+     * Reads the records of a buffer until its end or until an incomplete or
+     * corrupted record is found.
+     *
+     * @param content Buffer with the records
+     * @param handler Receives each record read, or null to only check them
+     * @return Position right after the last valid record
+     */
+    private static long replay(ByteBuffer content, RecordHandler handler) throws IOException {
+        CRC32 crc = new CRC32();
+        while (content.remaining() >= RECORD_HEADER_SIZE) {
+            int start = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length < RECORD_FIXED_SIZE || length > MAX_PAYLOAD_SIZE || length > content.remaining()) {
+                return start;
+            }
+
+            crc.reset();
+            ByteBuffer payload = content.slice();
+            payload.limit(length);
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+
+            Record record = Record.read(payload);
+            if (record == null) {
+                return start;
+            }
+            if (handler != null) {
+                handler.handle(record);
+            }
+            content.position(start + RECORD_HEADER_SIZE + length);
+        }
+        return content.position();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal file is too large");
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        channel.position(0);
+        while (content.hasRemaining() && channel.read(content) >= 0) {
+            // Reads until the buffer is full
+        }
+        content.flip();
+        return content;
+    }
+
+    /**
+     * Finds the greatest index of the files of a kind in a directory.
+     *
+     * @return Greatest index, or -1 if there is no such file
+     */
+    private static long latestIndex(Path directory, String prefix, String suffix) throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                latest = Math.max(latest, indexOf(file.getFileName().toString(), prefix, suffix));
+            }
+        }
+        return latest;
+    }
+
+    private static long indexOf(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Path segmentPath(Path directory, long index) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%010d", index) + SEGMENT_SUFFIX);
+    }
+
+    private static Path snapshotPath(Path directory, long index) {
+        return directory.resolve(SNAPSHOT_PREFIX + String.format("%010d", index) + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Records waiting to be appended to the journal, already encoded.
+     */
+    public static final class Batch {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        private final CRC32 crc = new CRC32();
+
+        private Batch() {
+        }
+
+        /**
+         * Adds the record of an approved operation.
+         *
+         * @param type Type of the operation
+         * @param number Number of the account, or of the card for purchases
+         * @param amount Amount of the operation
+         * @param balance Balance of the account or card right after the operation
+         * @param timestamp Time of the operation, in milliseconds since the epoch
+         * @param description Description of the purchase, ignored for accounts
+         */
+        public void add(Transaction.Type type, long number, double amount, double balance, long timestamp,
+                        String description) {
+            byte[] text = type == Transaction.Type.PURCHASE && description != null
+                    ? description.getBytes(StandardCharsets.UTF_8)
+                    : null;
+            int length = RECORD_FIXED_SIZE + (type == Transaction.Type.PURCHASE ? 4 + (text == null ? 0 : text.length) : 0);
+            if (length > MAX_PAYLOAD_SIZE) {
+                throw new IllegalArgumentException("Purchase description is too long");
+            }
+            ensureCapacity(RECORD_HEADER_SIZE + length);
+
+            int start = buffer.position();
+            buffer.putInt(length).putInt(0);
+            buffer.put((byte) type.ordinal()).putLong(number).putDouble(amount).putDouble(balance).putLong(timestamp);
+            if (type == Transaction.Type.PURCHASE) {
+                buffer.putInt(text == null ? -1 : text.length);
+                if (text != null) {
+                    buffer.put(text);
+                }
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), start + RECORD_HEADER_SIZE, length);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+
+        /**
+         * Removes all the records added since the batch was last appended.
+         */
+        public void clear() {
+            buffer.clear();
+        }
+
+        /**
+         * Checks whether the batch has no record.
+         *
+         * @return True if no record was added
+         */
+        public boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        private void add(Record record) {
+            add(record.type, record.number, record.amount, record.balance, record.timestamp, record.description);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (buffer.remaining() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + needed));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        /** Writes the records once the buffer is mostly full. */
+        private void drainTo(FileChannel out) throws IOException {
+            if (buffer.position() >= buffer.capacity() / 2) {
+                flushTo(out);
+            }
+        }
+
+        private void flushTo(FileChannel out) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Record read from a segment or snapshot.
+     */
+    private static final class Record {
+
+        private Transaction.Type type;
+        private long number;
+        private double amount;
+        private double balance;
+        private long timestamp;
+        private String description;
+
+        /**
+         * Decodes the payload of a record.
+         *
+         * @return Decoded record, or null if the payload is not valid
+         */
+        private static Record read(ByteBuffer payload) {
+            int ordinal = payload.get();
+            if (ordinal < 0 || ordinal >= TYPES.length) {
+                return null;
+            }
+
+            Record record = new Record();
+            record.type = TYPES[ordinal];
+            record.number = payload.getLong();
+            record.amount = payload.getDouble();
+            record.balance = payload.getDouble();
+            record.timestamp = payload.getLong();
+            if (record.type != Transaction.Type.PURCHASE) {
+                return payload.hasRemaining() ? null : record;
+            }
+
+            if (payload.remaining() < 4) {
+                return null;
+            }
+            int length = payload.getInt();
+            if (length == -1 && !payload.hasRemaining()) {
+                return record;
+            }
+            if (length != payload.remaining()) {
+                return null;
+            }
+            byte[] text = new byte[length];
+            payload.get(text);
+            record.description = new String(text, StandardCharsets.UTF_8);
+            return record;
+        }
+    }
+
+    /**
+     * Receives the records read from the journal.
+     */
+    private interface RecordHandler {
+        void handle(Record record) throws IOException;
+    }
+
+    /**
+     * Counts the records handed to another handler.
+     */
+    private static final class CountingHandler implements RecordHandler {
+
+        private final RecordHandler target;
+        private int count;
+
+        private CountingHandler(RecordHandler target) {
+            this.target = target;
+        }
+
+        @Override
+        public void handle(Record record) throws IOException {
+            count++;
+            target.handle(record);
+        }
+    }
+
+}
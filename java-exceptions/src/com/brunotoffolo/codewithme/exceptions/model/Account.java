@@ -1,8 +1,11 @@
 package com.brunotoffolo.codewithme.exceptions.model;
 
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.AuditEventType;
 import com.brunotoffolo.codewithme.exceptions.exception.InsufficientFundsException;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Basic and generic bank account to serve as an example for the banking scenario.
@@ -17,11 +20,10 @@ import java.util.*;
 public class Account {
 
     private final int number;
-    private double balance;
-    private double creditLimit;
+    private final AtomicBalance balance;
     private final Calendar creationDate;
     private final Customer customer;
-    private List<CreditCard> creditCards;
+    private final List<CreditCard> creditCards;
 
     /**
      * Basic constructor used to initialize the account and provide an initial
@@ -31,15 +33,16 @@ public class Account {
      */
     public Account(int number, Customer customer) {
         this.number = number;
-        this.balance = 0.0;
+        this.balance = new AtomicBalance(2000.00);
         this.customer = customer;
         this.creationDate = new GregorianCalendar();
-        this.creditLimit = 2000.00;
-        this.creditCards = new ArrayList<>();
+        this.creditCards = new CopyOnWriteArrayList<>();
     }
 
     /**
-     * Deposits a given amount in the account.
+     * Deposits a given amount in the account. Deposits and withdrawals can be
+     * performed by many threads at the same time, as the balance is updated
+     * atomically by an {@link AtomicBalance}.
      *
      * @param value Value to be deposited.
      * @return Updated balance after deposit was performed
@@ -49,34 +52,65 @@ public class Account {
             throw new IllegalArgumentException("Deposited value should be higher than zero");
         }
 
-        balance += value;
-        System.out.println("Account " + number + " | Deposited value: USD " + value + " | New balance: USD " + balance);
-        return balance;
+        double newBalance = balance.add(value);
+        Audit.record(AuditEventType.DEPOSIT, number, value, newBalance);
+        return newBalance;
     }
 
     /**
-     * Withdraws a given amount from the account.
+     * Withdraws a given amount from the account. The available amount is checked
+     * and debited in a single atomic step, so concurrent withdrawals can never
+     * exceed the balance plus the credit limit.
      *
      * @param value Value to be withdrawn.
      * @return Updated balance after withdrawal was performed
      */
     public double withdraw(double value) throws InsufficientFundsException {
+        OperationResult result = tryWithdraw(value);
+        if (!result.isApproved()) {
+            throw new InsufficientFundsException("Desired amount is higher than available amount");
+        }
+        return result.getBalance();
+    }
+
+    /**
+     * Withdraws a given amount from the account, in the same way as
+     * {@link #withdraw(double)} does, but reporting a withdrawal declined due to
+     * insufficient funds in the returned result instead of throwing an
+     * exception. It is meant for callers to which declines are not exceptional,
+     * as no exception is created for them.
+     *
+     * @param value Value to be withdrawn.
+     * @return Outcome of the withdrawal, with the updated balance if it was approved
+     */
+    public OperationResult tryWithdraw(double value) {
         if (value < 0) {
             throw new IllegalArgumentException("Withdrawal value should be higher than zero");
         }
 
-        if (value > (balance + creditLimit)) {
-            throw new InsufficientFundsException("Desired amount is higher than available amount");
+        OperationResult result = balance.trySubtract(value);
+        if (result.isApproved()) {
+            Audit.record(AuditEventType.WITHDRAWAL, number, value, result.getBalance());
+        } else {
+            Audit.record(AuditEventType.DECLINED_WITHDRAWAL, number, value, balance.get());
         }
+        return result;
+    }
 
-        balance -= value;
-        System.out.println("Account " + number + " | Withdrawn value: USD " + value +
-                " | Remaining balance: USD " + balance);
-        return balance;
+    /**
+     * Replaces the balance of the account, such as when it is restored from a
+     * journal. The operation is not audited.
+     *
+     * @param value Balance to be restored
+     */
+    public void restoreBalance(double value) {
+        balance.set(value);
     }
 
     /**
-     * Adds a new credit card to the account.
+     * Adds a new credit card to the account. Cards can be added while other
+     * threads read the cards of the account, as an account rarely has more
+     * than a few of them and they are copied on every addition.
      *
      * @param card Card to be added
      * @return true if addition was successful; false otherwise
@@ -109,7 +143,7 @@ public class Account {
      * @return Account balance
      */
     public double getBalance() {
-        return balance;
+        return balance.get();
     }
 
     /**
@@ -118,7 +152,7 @@ public class Account {
      * @return Credit limit
      */
     public double getCreditLimit() {
-        return creditLimit;
+        return balance.getCreditLimit();
     }
 
     /**
@@ -127,11 +161,7 @@ public class Account {
      * @param creditLimit Limit to be set
      */
     public void setCreditLimit(double creditLimit) {
-        if (creditLimit < 0) {
-            throw new IllegalArgumentException("Account credit limit should be a positive value");
-        }
-
-        this.creditLimit = creditLimit;
+        balance.setCreditLimit(creditLimit);
     }
 
     /**
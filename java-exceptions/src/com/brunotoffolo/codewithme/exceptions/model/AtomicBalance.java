@@ -0,0 +1,151 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+import com.brunotoffolo.codewithme.exceptions.exception.InsufficientFundsException;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Balance of an account that can be updated by many threads at the same time.
+ *
+ * The balance is kept as a whole number of cents in a single long, so it never
+ * accumulates rounding errors, and every update is done by a compare-and-set
+ * loop instead of a lock. A withdrawal reads the balance, checks it against the
+ * credit limit and stores the new balance in one atomic step: if any other
+ * thread changed the balance in the meantime, the check is simply done again
+ * with the new value. Two withdrawals can therefore never both succeed when
+ * the funds are only enough for one of them, and no deposit is ever lost.
+ *
+ * Amounts are given in dollars and rounded to the nearest cent through
+ * {@link Money#USD}, and the arithmetic on cents is checked for overflow. A
+ * change of the credit limit applies to the withdrawals that start after it.
+ *
+ * @author Bruno Toffolo
+ */
+public class AtomicBalance {
+
+    private static final AtomicLongFieldUpdater<AtomicBalance> CENTS =
+            AtomicLongFieldUpdater.newUpdater(AtomicBalance.class, "cents");
+
+    private volatile long cents;
+    private volatile long creditLimitCents;
+
+    /**
+     * Creates a zero balance with the given credit limit.
+     *
+     * @param creditLimit Amount that can be withdrawn beyond the balance
+     */
+    public AtomicBalance(double creditLimit) {
+        setCreditLimit(creditLimit);
+    }
+
+    /**
+     * Adds the given amount to the balance.
+     *
+     * @param value Amount to be added
+     * @return Balance right after the amount was added
+     */
+    public double add(double value) {
+        long delta = toCents(value);
+        while (true) {
+            long current = cents;
+            long updated = Money.add(current, delta);
+            if (CENTS.compareAndSet(this, current, updated)) {
+                return toDollars(updated);
+            }
+        }
+    }
+
+    /**
+     * Subtracts the given amount from the balance, as long as it is not higher
+     * than the balance plus the credit limit.
+     *
+     * @param value Amount to be subtracted
+     * @return Balance right after the amount was subtracted
+     * @throws InsufficientFundsException If the amount is higher than the available funds
+     */
+    public double subtract(double value) throws InsufficientFundsException {
+        OperationResult result = trySubtract(value);
+        if (!result.isApproved()) {
+            throw new InsufficientFundsException("Desired amount is higher than available amount");
+        }
+        return result.getBalance();
+    }
+
+    /**
+     * Subtracts the given amount from the balance, as long as it is not higher
+     * than the balance plus the credit limit. Differently from
+     * {@link #subtract(double)}, a declined subtraction is reported by the
+     * returned result instead of an exception.
+     *
+     * @param value Amount to be subtracted
+     * @return Outcome of the subtraction, with the balance right after it
+     */
+    public OperationResult trySubtract(double value) {
+        long delta = toCents(value);
+        while (true) {
+            long current = cents;
+            long updated = Money.subtract(current, delta);
+            if (updated < -creditLimitCents) {
+                return OperationResult.DECLINED;
+            }
+
+            if (CENTS.compareAndSet(this, current, updated)) {
+                return OperationResult.approved(toDollars(updated));
+            }
+        }
+    }
+
+    /**
+     * Replaces the balance, such as when it is restored from a journal.
+     *
+     * @param value New balance
+     */
+    public void set(double value) {
+        cents = toCents(value);
+    }
+
+    /**
+     * Gets the current balance.
+     *
+     * @return Balance
+     */
+    public double get() {
+        return toDollars(cents);
+    }
+
+    /**
+     * Gets the credit limit.
+     *
+     * @return Credit limit
+     */
+    public double getCreditLimit() {
+        return toDollars(creditLimitCents);
+    }
+
+    /**
+     * Sets the credit limit.
+     *
+     * @param creditLimit Limit to be set
+     */
+    public void setCreditLimit(double creditLimit) {
+        if (creditLimit < 0) {
+            throw new IllegalArgumentException("Account credit limit should be a positive value");
+        }
+
+        this.creditLimitCents = toCents(creditLimit);
+    }
+
+    private static long toCents(double value) {
+        return Money.USD.toMinor(value);
+    }
+
+    private static double toDollars(long cents) {
+        return Money.USD.toMajor(cents);
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(get());
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.brunotoffolo.codewithme.exceptions.model;
 
+import com.brunotoffolo.codewithme.exceptions.audit.Audit;
+import com.brunotoffolo.codewithme.exceptions.audit.AuditEventType;
 import com.brunotoffolo.codewithme.exceptions.exception.InsufficientFundsException;
 
 import java.io.BufferedWriter;
@@ -7,7 +9,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -23,24 +24,27 @@ public class CreditCard {
 
     private final long number;
     private final String brand;
-    private double limit;
-    private double balance;
+
+    /** Limit and balance of the card, in cents through {@link Money#USD}. */
+    private long limitCents;
+    private long balanceCents;
+
     private final Calendar expirationDate;
     private int pin;
-    private List<Purchase> purchases;
+    private final PurchaseLog purchases;
 
     public CreditCard(int pin, Calendar expirationDate, double limit, String brand, long number) {
         if (expirationDate.before(new GregorianCalendar())) {
             throw new IllegalArgumentException("Credit card expiration date should not be in the past");
         }
 
-        this.balance = 0.0;
+        this.balanceCents = 0;
         this.brand = brand;
         this.expirationDate = expirationDate;
         this.number = number;
         setLimit(limit);
         setPin(pin);
-        this.purchases = new ArrayList<>();
+        this.purchases = new PurchaseLog();
     }
 
     /**
@@ -58,7 +62,7 @@ public class CreditCard {
      * @return Card limit
      */
     public double getLimit() {
-        return limit;
+        return Money.USD.toMajor(limitCents);
     }
 
     /**
@@ -71,7 +75,7 @@ public class CreditCard {
             throw new IllegalArgumentException("Credit card limit should be a positive value");
         }
 
-        this.limit = limit;
+        this.limitCents = Money.USD.toMinor(limit);
     }
 
     /**
@@ -80,7 +84,16 @@ public class CreditCard {
      * @return Card balance
      */
     public double getBalance() {
-        return balance;
+        return Money.USD.toMajor(balanceCents);
+    }
+
+    /**
+     * Gets the part of the limit that was not used by purchases yet.
+     *
+     * @return Remaining limit
+     */
+    public double getAvailableLimit() {
+        return Money.USD.toMajor(Money.subtract(limitCents, balanceCents));
     }
 
     /**
@@ -123,6 +136,45 @@ public class CreditCard {
         return expirationDate;
     }
 
+    /**
+     * Gets the purchases added to the card, in the order they were made, as
+     * {@link Purchase} objects created as they are read.
+     *
+     * @return Unmodifiable list of purchases
+     */
+    public List<Purchase> getPurchases() {
+        return purchases.asList();
+    }
+
+    /**
+     * Gets the purchases added to the card, in the order they were made, in
+     * the columns in which they are stored.
+     *
+     * @return Read-only log of purchases
+     */
+    public PurchaseLog getPurchaseLog() {
+        return purchases;
+    }
+
+    /**
+     * Adds a purchase that was already approved, such as a purchase restored
+     * from a journal, and sets the balance of the card right after it. The
+     * limit is not checked and the purchase is not audited again.
+     *
+     * @param time Time of the purchase, in milliseconds since the epoch
+     * @param amount Amount of the purchase
+     * @param description Description of the purchase
+     * @param balance Balance of the card right after the purchase
+     */
+    public void restorePurchase(long time, double amount, String description, double balance) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Purchase amount should be higher than zero");
+        }
+
+        purchases.add(time, Money.USD.toMinor(amount), description);
+        this.balanceCents = Money.USD.toMinor(balance);
+    }
+
     /**
      * Adds a new purchase in the credit card invoice.
      *
@@ -131,19 +183,43 @@ public class CreditCard {
      * @returns Partial balance including the added purchase
      */
     public double addPurchase(double amount, String description) throws InsufficientFundsException {
-        if (balance + amount > limit) {
+        OperationResult result = tryAddPurchase(amount, description);
+        if (!result.isApproved()) {
             throw new InsufficientFundsException("Purchase amount is higher than the available limit");
         }
+        return result.getBalance();
+    }
+
+    /**
+     * Adds a new purchase in the credit card invoice, in the same way as
+     * {@link #addPurchase(double, String)} does, but reporting a purchase
+     * declined due to insufficient limit in the returned result instead of
+     * throwing an exception.
+     *
+     * @param amount Amount of the purchase.
+     * @param description Description of the purchase.
+     * @return Outcome of the purchase, with the partial balance if it was approved
+     */
+    public OperationResult tryAddPurchase(double amount, String description) {
+        // Check if purchase amount is valid
+        if (amount < 0) {
+            throw new IllegalArgumentException("Purchase amount should be higher than zero");
+        }
 
-        balance += amount;
+        long amountCents = Money.USD.toMinor(amount);
+        long updated = Money.add(balanceCents, amountCents);
+        if (updated > limitCents) {
+            Audit.record(AuditEventType.DECLINED_PURCHASE, number, amount, getBalance());
+            return OperationResult.DECLINED;
+        }
 
-        Purchase purchase = new Purchase(amount, description);
-        purchases.add(purchase);
+        balanceCents = updated;
+        purchases.add(System.currentTimeMillis(), amountCents, description);
 
-        System.out.println("CC " + number + " | New purchase: USD " + amount +
-                " | Current balance: USD " + balance);
+        double balance = getBalance();
+        Audit.record(AuditEventType.PURCHASE, number, amount, balance);
 
-        return balance;
+        return OperationResult.approved(balance);
     }
 
     /**
@@ -182,15 +258,15 @@ public class CreditCard {
             bufferedWriter.write("--------------------------------------------\r\n");
             bufferedWriter.write("PURCHASES\r\n");
             bufferedWriter.write("Date\t\tAmount\tDescription\r\n");
-            for (Purchase purchase : purchases) {
+            for (Purchase purchase : getPurchases()) {
                 bufferedWriter.write(
                         dateFormat.format(purchase.getDate().getTime()) + "\t" +
                         purchase.getAmount() + "\t" +
                         purchase.getDescription() + "\r\n");
             }
             bufferedWriter.write("--------------------------------------------\r\n");
-            bufferedWriter.write("TOTAL AMOUNT: USD " + balance + "\n");
-            bufferedWriter.write("Remaining limit: USD " + (limit - balance) + "\n");
+            bufferedWriter.write("TOTAL AMOUNT: USD " + getBalance() + "\n");
+            bufferedWriter.write("Remaining limit: USD " + getAvailableLimit() + "\n");
             bufferedWriter.write("--------------------------------------------\r\n");
             bufferedWriter.write("Invoice generated at " + currentTime);
 
@@ -0,0 +1,177 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+/**
+ * Fixed-point representation of the amounts of a currency, which are kept as
+ * a whole number of minor units, such as cents, in a single long.
+ *
+ * Amounts in minor units are exact, so adding and subtracting them never
+ * accumulates rounding errors as adding doubles does, and they do not allocate
+ * any object as {@link BigDecimal} does. An instance of this class only holds
+ * the scale of its currency, which is the number of decimal digits of the
+ * minor unit, and converts amounts between minor units and the doubles and
+ * decimals used at the edges of the model. The arithmetic on minor units is
+ * the same for every currency, and throws an {@link ArithmeticException} on
+ * overflow instead of wrapping around.
+ *
+ * Both conversions into minor units round half to even, also known as the
+ * banker's rounding, and a double is taken as its shortest decimal
+ * representation, the one of {@link Double#toString(double)}, so 0.125 and
+ * {@code new BigDecimal("0.125")} both become 12 cents, and -0.125 becomes -12.
+ *
+ * @author Bruno Toffolo
+ */
+public final class Money {
+
+    /** US dollars, with two decimal digits, in which all the amounts of the model are given. */
+    public static final Money USD = new Money(Currency.getInstance("USD").getDefaultFractionDigits());
+
+    private final int scale;
+    private final long factor;
+
+    /** Greatest amount, in major units, that can be converted into minor units. */
+    private final double maxAmount;
+
+    /**
+     * Greatest amount in minor units rounded without going through a decimal,
+     * small enough for the errors of the double to be far below a tie.
+     */
+    private static final double MAX_FAST_MINOR = 1L << 40;
+
+    /**
+     * Distance to a tie below which an amount is rounded as a decimal, as the
+     * double may be on the other side of the tie than its decimal representation.
+     */
+    private static final double TIE_MARGIN = 1e-3;
+
+    /**
+     * Creates the representation of a currency.
+     *
+     * @param scale Number of decimal digits of the minor unit
+     */
+    public Money(int scale) {
+        if (scale < 0 || scale > 18) {
+            throw new IllegalArgumentException("Currency scale should be between 0 and 18");
+        }
+
+        long power = 1;
+        for (int i = 0; i < scale; i++) {
+            power *= 10;
+        }
+        this.scale = scale;
+        this.factor = power;
+        this.maxAmount = Long.MAX_VALUE / (double) power;
+    }
+
+    /**
+     * Gets the number of decimal digits of the minor unit.
+     *
+     * @return Currency scale
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Converts an amount into minor units, rounded half to even, in the same
+     * way as {@link #toMinor(BigDecimal)} converts its shortest decimal
+     * representation. Amounts that are not close to a tie, which are almost
+     * all of them, are rounded without creating any decimal.
+     *
+     * @param amount Amount in major units
+     * @return Amount in minor units
+     * @throws IllegalArgumentException If the amount is not a number or is too large
+     */
+    public long toMinor(double amount) {
+        if (Double.isNaN(amount) || Math.abs(amount) >= maxAmount) {
+            throw new IllegalArgumentException("Amount can not be represented in minor units: " + amount);
+        }
+
+        double minor = amount * factor;
+        double rounded = Math.rint(minor);
+        if (Math.abs(minor) < MAX_FAST_MINOR && Math.abs(Math.abs(minor - rounded) - 0.5) > TIE_MARGIN) {
+            return (long) rounded;
+        }
+        return toMinor(BigDecimal.valueOf(amount));
+    }
+
+    /**
+     * Converts a decimal amount into minor units, rounded half to even.
+     *
+     * @param amount Amount in major units
+     * @return Amount in minor units
+     * @throws IllegalArgumentException If the amount is too large
+     */
+    public long toMinor(BigDecimal amount) {
+        try {
+            return amount.setScale(scale, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount can not be represented in minor units: " + amount, e);
+        }
+    }
+
+    /**
+     * Converts an amount in minor units into the closest double.
+     *
+     * @param minor Amount in minor units
+     * @return Amount in major units
+     */
+    public double toMajor(long minor) {
+        return minor / (double) factor;
+    }
+
+    /**
+     * Converts an amount in minor units into an exact decimal.
+     *
+     * @param minor Amount in minor units
+     * @return Amount in major units
+     */
+    public BigDecimal toBigDecimal(long minor) {
+        return BigDecimal.valueOf(minor, scale);
+    }
+
+    /**
+     * Adds two amounts in minor units.
+     *
+     * @param a First amount
+     * @param b Second amount
+     * @return Sum of the amounts
+     * @throws ArithmeticException If the sum overflows
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Subtracts an amount in minor units from another.
+     *
+     * @param a Amount to be subtracted from
+     * @param b Amount to be subtracted
+     * @return Difference of the amounts
+     * @throws ArithmeticException If the difference overflows
+     */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Multiplies an amount in minor units by a whole quantity.
+     *
+     * @param minor Amount in minor units
+     * @param quantity Quantity by which the amount is multiplied
+     * @return Product of the amount and the quantity
+     * @throws ArithmeticException If the product overflows
+     */
+    public static long multiply(long minor, long quantity) {
+        return Math.multiplyExact(minor, quantity);
+    }
+
+    @Override
+    public String toString() {
+        return "Money with scale " + scale;
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+/**
+ * Outcome of an operation that may be declined due to insufficient funds, for
+ * the callers that expect declines to be common and do not want to pay for an
+ * exception on each one of them.
+ *
+ * A declined operation is always represented by the same {@link #DECLINED}
+ * instance, so declining an operation does not allocate any object.
+ *
+ * @author Bruno Toffolo
+ */
+public final class OperationResult {
+
+    /** Outcome of every declined operation. */
+    public static final OperationResult DECLINED = new OperationResult(false, Double.NaN);
+
+    private final boolean approved;
+    private final double balance;
+
+    private OperationResult(boolean approved, double balance) {
+        this.approved = approved;
+        this.balance = balance;
+    }
+
+    /**
+     * Creates the outcome of an approved operation.
+     *
+     * @param balance Balance right after the operation was performed
+     * @return Approved outcome
+     */
+    public static OperationResult approved(double balance) {
+        return new OperationResult(true, balance);
+    }
+
+    /**
+     * Checks if the operation was approved.
+     *
+     * @return true if the operation was performed; false if it was declined
+     */
+    public boolean isApproved() {
+        return approved;
+    }
+
+    /**
+     * Gets the balance right after the operation was performed.
+     *
+     * @return Updated balance
+     */
+    public double getBalance() {
+        if (!approved) {
+            throw new IllegalStateException("Declined operations do not update the balance");
+        }
+        return balance;
+    }
+
+    @Override
+    public String toString() {
+        return approved ? "Approved, balance of USD " + balance : "Declined";
+    }
+
+}
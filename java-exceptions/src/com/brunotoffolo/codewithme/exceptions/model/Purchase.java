@@ -14,17 +14,29 @@ import java.util.GregorianCalendar;
 public class Purchase {
 
     private final Calendar date;
-    private final double amount;
+    private final long amountCents;
     private String description;
 
     public Purchase(double amount, String description) {
+        this(amount, description, new GregorianCalendar());
+    }
+
+    /**
+     * Creates a purchase made at the given date, such as a purchase restored
+     * from a journal.
+     *
+     * @param amount Purchase amount
+     * @param description Purchase description
+     * @param date Date in which the purchase was made
+     */
+    public Purchase(double amount, String description, Calendar date) {
         // Check if purchase amount is valid
         if (amount < 0) {
             throw new IllegalArgumentException("Purchase amount should be higher than zero");
         }
 
-        this.amount = amount;
-        this.date = new GregorianCalendar();
+        this.amountCents = Money.USD.toMinor(amount);
+        this.date = date;
         this.setDescription(description);
     }
 
@@ -41,7 +53,15 @@ public class Purchase {
      * @return purchase amount
      */
     public double getAmount() {
-        return amount;
+        return Money.USD.toMajor(amountCents);
+    }
+
+    /**
+     * Gets the purchase amount in cents, which is exact.
+     * @return purchase amount in cents
+     */
+    public long getAmountCents() {
+        return amountCents;
     }
 
     /**
@@ -0,0 +1,338 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Purchases of a credit card stored in columns, as an array of times, an
+ * array of amounts and an array of description codes, instead of as a list of
+ * {@link Purchase} objects.
+ *
+ * Each purchase takes 20 bytes of columns: its time in milliseconds since the
+ * epoch, its amount in cents and the code of its description. With the room
+ * the arrays keep to grow, that makes about 21 bytes per purchase in a log of
+ * a few hundred purchases. A {@link Purchase} needs its own object, a
+ * {@link java.util.GregorianCalendar} with all of its fields and a reference
+ * to it in a list, which adds up to hundreds of bytes, so cards with years of
+ * history take a small fraction of the memory they did.
+ *
+ * Descriptions are encoded by a dictionary shared by all the logs, as the same
+ * descriptions repeat over and over across purchases and cards, so each
+ * distinct description is kept only once. The dictionary holds at most 65536
+ * descriptions, so descriptions that never repeat, such as ones with an order
+ * number, can not make it grow forever. Once it is full, the descriptions it
+ * does not have are kept by the log itself, which then takes a reference to
+ * the description for each of those purchases besides its code.
+ *
+ * The purchases are kept in the order they were added, which is almost always
+ * the order of their times. As long as it is, the purchases made in a period
+ * are found by a binary search over the times; otherwise they are found by
+ * looking at every purchase.
+ *
+ * A log is not thread safe. It is only changed by its card, which should be
+ * updated by a single thread at a time.
+ *
+ * @author Bruno Toffolo
+ */
+public class PurchaseLog {
+
+    /** Code of a null description. */
+    private static final int NO_DESCRIPTION = -1;
+
+    /** Code of the first description kept by the log itself; the next ones count down from it. */
+    private static final int FIRST_INLINE = -2;
+
+    /** Greatest number of distinct descriptions kept by the shared dictionary. */
+    private static final int DICTIONARY_CAPACITY = 1 << 16;
+
+    private static final Dictionary DESCRIPTIONS = new Dictionary(DICTIONARY_CAPACITY);
+
+    /** Shared by all the empty logs, so cards without purchases take almost no memory. */
+    private static final long[] NO_LONGS = new long[0];
+    private static final int[] NO_INTS = new int[0];
+    private static final String[] NO_STRINGS = new String[0];
+
+    private long[] times = NO_LONGS;
+    private long[] amounts = NO_LONGS;
+    private int[] descriptions = NO_INTS;
+    private int size;
+
+    /** Descriptions that did not fit into the shared dictionary, in the order they were added. */
+    private String[] inlineDescriptions = NO_STRINGS;
+    private int inlineSize;
+
+    /** Whether the times were added in ascending order. */
+    private boolean sorted = true;
+
+    /**
+     * Receives the purchases of a log, one column value at a time, so they can
+     * be read without creating any object.
+     */
+    @FunctionalInterface
+    public interface PurchaseConsumer {
+
+        /**
+         * Receives a purchase.
+         *
+         * @param time Time of the purchase, in milliseconds since the epoch
+         * @param amountCents Amount of the purchase, in cents
+         * @param description Description of the purchase
+         */
+        void accept(long time, long amountCents, String description);
+    }
+
+    /**
+     * Adds a purchase to the end of the log.
+     *
+     * @param time Time of the purchase, in milliseconds since the epoch
+     * @param amountCents Amount of the purchase, in cents
+     * @param description Description of the purchase
+     */
+    void add(long time, long amountCents, String description) {
+        if (size == times.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            times = Arrays.copyOf(times, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+        }
+
+        if (size > 0 && time < times[size - 1]) {
+            sorted = false;
+        }
+        times[size] = time;
+        amounts[size] = amountCents;
+        descriptions[size] = encode(description);
+        size++;
+    }
+
+    /**
+     * Gets the code of a description, keeping it in the log itself if the
+     * shared dictionary is full.
+     */
+    private int encode(String description) {
+        if (description == null) {
+            return NO_DESCRIPTION;
+        }
+        int code = DESCRIPTIONS.encode(description);
+        if (code >= 0) {
+            return code;
+        }
+
+        if (inlineSize == inlineDescriptions.length) {
+            inlineDescriptions = Arrays.copyOf(inlineDescriptions, Math.max(4, inlineSize + (inlineSize >> 1)));
+        }
+        inlineDescriptions[inlineSize] = description;
+        return FIRST_INLINE - inlineSize++;
+    }
+
+    /**
+     * Gets the number of purchases in the log.
+     *
+     * @return Number of purchases
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the time of a purchase.
+     *
+     * @param index Position of the purchase in the log
+     * @return Time of the purchase, in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * Gets the amount of a purchase.
+     *
+     * @param index Position of the purchase in the log
+     * @return Amount of the purchase, in cents
+     */
+    public long getAmountCents(int index) {
+        checkIndex(index);
+        return amounts[index];
+    }
+
+    /**
+     * Gets the description of a purchase.
+     *
+     * @param index Position of the purchase in the log
+     * @return Description of the purchase
+     */
+    public String getDescription(int index) {
+        checkIndex(index);
+        int code = descriptions[index];
+        if (code >= 0) {
+            return DESCRIPTIONS.decode(code);
+        }
+        return code == NO_DESCRIPTION ? null : inlineDescriptions[FIRST_INLINE - code];
+    }
+
+    /**
+     * Gets a read-only view of the log as a list of {@link Purchase} objects,
+     * which are created as they are read. The view is meant for the code that
+     * needs a whole purchase at a time, such as the invoice of a card, while
+     * the code that reads many purchases should read the columns instead.
+     *
+     * @return List view of the purchases
+     */
+    public List<Purchase> asList() {
+        return new PurchaseList();
+    }
+
+    /**
+     * Hands every purchase made in a period to a consumer, in the order they
+     * were added.
+     *
+     * @param from Start of the period, inclusive, in milliseconds since the epoch
+     * @param to End of the period, exclusive, in milliseconds since the epoch
+     * @param consumer Receives each purchase made in the period
+     */
+    public void forEachBetween(long from, long to, PurchaseConsumer consumer) {
+        if (!sorted) {
+            for (int i = 0; i < size; i++) {
+                if (times[i] >= from && times[i] < to) {
+                    consumer.accept(times[i], amounts[i], getDescription(i));
+                }
+            }
+            return;
+        }
+
+        for (int i = firstAtOrAfter(from); i < size && times[i] < to; i++) {
+            consumer.accept(times[i], amounts[i], getDescription(i));
+        }
+    }
+
+    /**
+     * Sums the amounts of the purchases made in a period.
+     *
+     * @param from Start of the period, inclusive, in milliseconds since the epoch
+     * @param to End of the period, exclusive, in milliseconds since the epoch
+     * @return Total amount of the purchases, in cents
+     */
+    public long totalBetween(long from, long to) {
+        long total = 0;
+        if (!sorted) {
+            for (int i = 0; i < size; i++) {
+                if (times[i] >= from && times[i] < to) {
+                    total = Money.add(total, amounts[i]);
+                }
+            }
+            return total;
+        }
+
+        for (int i = firstAtOrAfter(from); i < size && times[i] < to; i++) {
+            total = Money.add(total, amounts[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the first purchase made at or after a time, when the times are in
+     * ascending order.
+     *
+     * @return Position of the purchase, or the size of the log if there is none
+     */
+    private int firstAtOrAfter(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Purchase " + index + " is not in a log of " + size + " purchases");
+        }
+    }
+
+    /**
+     * List view of the purchases of the log.
+     */
+    private final class PurchaseList extends AbstractList<Purchase> implements RandomAccess {
+
+        @Override
+        public Purchase get(int index) {
+            Calendar date = new GregorianCalendar();
+            date.setTimeInMillis(getTime(index));
+            return new Purchase(Money.USD.toMajor(amounts[index]), getDescription(index), date);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Dictionary of descriptions shared by all the logs, which gives each
+     * distinct description a code. Descriptions are never removed, so the
+     * dictionary stops taking new ones once it holds its capacity.
+     */
+    private static final class Dictionary {
+
+        private final int capacity;
+        private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[256];
+        private volatile boolean full;
+        private int size;
+
+        private Dictionary(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Gets the code of a description, giving it a new one if it is not in
+         * the dictionary yet.
+         *
+         * @return Code of the description, or -1 if it is not in the dictionary
+         *         and the dictionary is full
+         */
+        private int encode(String description) {
+            Integer code = codes.get(description);
+            if (code != null) {
+                return code;
+            }
+            return full ? -1 : add(description);
+        }
+
+        private synchronized int add(String description) {
+            Integer code = codes.get(description);
+            if (code != null) {
+                return code;
+            }
+
+            if (size == capacity) {
+                full = true;
+                return -1;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(2 * size, capacity));
+            }
+            values[size] = description;
+            // Published only after the value is stored, so any thread that gets the code can decode it
+            codes.put(description, size);
+            return size++;
+        }
+
+        private String decode(int code) {
+            return values[code];
+        }
+    }
+
+}
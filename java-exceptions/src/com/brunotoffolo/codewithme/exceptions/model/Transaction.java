@@ -0,0 +1,120 @@
+package com.brunotoffolo.codewithme.exceptions.model;
+
+/**
+ * Operation to be applied to an account or to a credit card, which can be
+ * queued and applied later.
+ *
+ * @author Bruno Toffolo
+ */
+public final class Transaction {
+
+    /**
+     * Kinds of operation, each one mapped to the method that applies it.
+     */
+    public enum Type {
+        /** Applied by {@link Account#deposit(double)}. */
+        DEPOSIT,
+        /** Applied by {@link Account#withdraw(double)}. */
+        WITHDRAWAL,
+        /** Applied by {@link CreditCard#addPurchase(double, String)}. */
+        PURCHASE
+    }
+
+    private final Type type;
+    private final long target;
+    private final double amount;
+    private final String description;
+
+    private Transaction(Type type, long target, double amount, String description) {
+        this.type = type;
+        this.target = target;
+        this.amount = amount;
+        this.description = description;
+    }
+
+    /**
+     * Creates a deposit into an account.
+     *
+     * @param accountNumber Number of the account
+     * @param amount Amount to be deposited
+     * @return Deposit transaction
+     */
+    public static Transaction deposit(int accountNumber, double amount) {
+        return new Transaction(Type.DEPOSIT, accountNumber, amount, null);
+    }
+
+    /**
+     * Creates a withdrawal from an account.
+     *
+     * @param accountNumber Number of the account
+     * @param amount Amount to be withdrawn
+     * @return Withdrawal transaction
+     */
+    public static Transaction withdrawal(int accountNumber, double amount) {
+        return new Transaction(Type.WITHDRAWAL, accountNumber, amount, null);
+    }
+
+    /**
+     * Creates a purchase with a credit card.
+     *
+     * @param cardNumber Number of the credit card
+     * @param amount Amount of the purchase
+     * @param description Description of the purchase
+     * @return Purchase transaction
+     */
+    public static Transaction purchase(long cardNumber, double amount, String description) {
+        return new Transaction(Type.PURCHASE, cardNumber, amount, description);
+    }
+
+    /**
+     * Gets the kind of operation.
+     *
+     * @return Transaction type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the number of the account or of the credit card the transaction
+     * applies to, depending on its type.
+     *
+     * @return Account or card number
+     */
+    public long getTarget() {
+        return target;
+    }
+
+    /**
+     * Gets the transaction amount.
+     *
+     * @return Amount
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Gets the description of a purchase.
+     *
+     * @return Description; null for deposits and withdrawals
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Checks if the transaction applies to a credit card instead of an account.
+     *
+     * @return true for purchases; false otherwise
+     */
+    public boolean isCardTransaction() {
+        return type == Type.PURCHASE;
+    }
+
+    @Override
+    public String toString() {
+        return type + " of USD " + amount + (isCardTransaction() ? " on card " : " on account ") + target;
+    }
+
+}
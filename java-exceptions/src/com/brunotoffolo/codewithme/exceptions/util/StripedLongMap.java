@@ -0,0 +1,268 @@
+package com.brunotoffolo.codewithme.exceptions.util;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent map from primitive long keys to objects, made for maps with
+ * millions of entries that are read much more often than they are written.
+ *
+ * The map is divided into stripes, and each stripe is an open-addressing hash
+ * table with its own lock. Keys are never boxed, and each entry takes only a
+ * slot in a long array and another one in an object array, with no node
+ * object as in a {@link java.util.concurrent.ConcurrentHashMap}. Writes lock
+ * only the stripe of their key, so threads writing to different stripes do
+ * not wait for each other. Reads do not lock at all in the common case: they
+ * probe the table optimistically and only fall back to the read lock if a
+ * write happened in the same stripe in the meantime.
+ *
+ * Entries can not be removed, which suits registries whose entries are never
+ * deleted, and null values are not allowed.
+ *
+ * @param <V> Type of the values
+ * @author Bruno Toffolo
+ */
+public class StripedLongMap<V> {
+
+    private final Stripe<V>[] stripes;
+    private final int stripeShift;
+
+    /**
+     * Creates a map with a number of stripes based on the available cores.
+     */
+    public StripedLongMap() {
+        this(0);
+    }
+
+    /**
+     * Creates a map sized to hold the given number of entries without having
+     * to grow, and with a number of stripes based on the available cores.
+     *
+     * @param expectedSize Number of entries the map is expected to hold
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLongMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size should not be negative");
+        }
+
+        int stripeCount = Integer.highestOneBit(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()) - 1) << 1;
+        this.stripes = (Stripe<V>[]) new Stripe<?>[stripeCount];
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripeCount);
+
+        int stripeSize = expectedSize / stripeCount + 1;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(stripeSize);
+        }
+    }
+
+    /**
+     * Gets the value mapped to the key.
+     *
+     * @param key Key to be looked up
+     * @return Value of the key; null if the key is not in the map
+     */
+    public V get(long key) {
+        long hash = hash(key);
+        return stripeOf(hash).get(key, (int) hash);
+    }
+
+    /**
+     * Maps the key to the value, unless it is already mapped to another value.
+     *
+     * @param key Key to be mapped
+     * @param value Value to be mapped to the key
+     * @return Value that was already mapped to the key; null if the value was mapped
+     */
+    public V putIfAbsent(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Values should not be null");
+        }
+        long hash = hash(key);
+        return stripeOf(hash).putIfAbsent(key, (int) hash, k -> value, false);
+    }
+
+    /**
+     * Gets the value mapped to the key, mapping it to a new value created by
+     * the given function if it is not in the map yet. The function is called
+     * at most once for each key, while the stripe of the key is locked, so it
+     * must be short and it must not access this map.
+     *
+     * @param key Key to be looked up
+     * @param mappingFunction Function that creates the value of the key
+     * @return Value that is mapped to the key
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        long hash = hash(key);
+        Stripe<V> stripe = stripeOf(hash);
+        V value = stripe.get(key, (int) hash);
+        return value != null ? value : stripe.putIfAbsent(key, (int) hash, mappingFunction, true);
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return Number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    /**
+     * Performs the given action for every value of the map. Each stripe is
+     * copied before its values are handed to the action, so the action can
+     * access the map, and entries added during the iteration may or may not be
+     * seen by it.
+     *
+     * @param action Action to be performed for each value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        for (Stripe<V> stripe : stripes) {
+            for (Object value : stripe.snapshot()) {
+                if (value != null) {
+                    action.accept((V) value);
+                }
+            }
+        }
+    }
+
+    private Stripe<V> stripeOf(long hash) {
+        return stripes[(int) (hash >>> stripeShift)];
+    }
+
+    /**
+     * Spreads the bits of the key, so consecutive keys are not placed in
+     * neighbouring slots. The highest bits select the stripe and the lowest
+     * ones the slot inside the stripe.
+     */
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Hash table of a stripe, which is replaced as a whole when the stripe
+     * grows. An empty slot is marked by a null value.
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final Object[] values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Finds the slot of the key, or the empty slot in which it would be
+         * inserted. The probe is bounded by the table length, so it ends even
+         * when it runs over a table that is being written.
+         */
+        private int slotOf(long key, int hash) {
+            int slot = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (values[slot] == null || keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Part of the map guarded by its own lock.
+     */
+    private static final class Stripe<V> {
+
+        private static final float LOAD_FACTOR = 0.75f;
+
+        private final StampedLock lock = new StampedLock();
+        private Table table;
+        private volatile int size;
+
+        private Stripe(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+            this.table = new Table(Math.max(capacity, 4));
+        }
+
+        private V get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            V value = find(table, key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = find(table, key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V find(Table current, long key, int hash) {
+            int slot = current.slotOf(key, hash);
+            return slot < 0 ? null : (V) current.values[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        private V putIfAbsent(long key, int hash, LongFunction<? extends V> mappingFunction, boolean returnMapped) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = table.slotOf(key, hash);
+                if (table.values[slot] != null) {
+                    return (V) table.values[slot];
+                }
+
+                V value = mappingFunction.apply(key);
+                if (value == null) {
+                    throw new IllegalArgumentException("Values should not be null");
+                }
+
+                if (size + 1 > table.keys.length * LOAD_FACTOR) {
+                    grow();
+                    slot = table.slotOf(key, hash);
+                }
+                table.keys[slot] = key;
+                table.values[slot] = value;
+                size++;
+                return returnMapped ? value : null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void grow() {
+            Table old = table;
+            Table grown = new Table(old.keys.length * 2);
+            for (int i = 0; i < old.values.length; i++) {
+                if (old.values[i] != null) {
+                    int slot = grown.slotOf(old.keys[i], (int) hash(old.keys[i]));
+                    grown.keys[slot] = old.keys[i];
+                    grown.values[slot] = old.values[i];
+                }
+            }
+            table = grown;
+        }
+
+        private Object[] snapshot() {
+            long stamp = lock.readLock();
+            try {
+                return table.values.clone();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.streams.io.FileTailer;
+import com.brunotoffolo.codewithme.streams.util.AhoCorasickMatcher;
+import com.brunotoffolo.codewithme.streams.util.LengthStatistics;
+import com.brunotoffolo.codewithme.streams.util.LinePredicates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Follows a book that is still being written, such as a text file that some
+ * other process keeps appending to, and keeps the same results computed by
+ * {@link BookParser} up to date as the book grows: the lines that contain the
+ * desired word, converted to uppercase, and the statistics of the lengths of
+ * the lines that start with an uppercase letter.
+ * <p>
+ * The book is never read again from its beginning. A {@link FileTailer}
+ * reads only the bytes appended since the last read, and every new line is
+ * filtered and added to the statistics once, so keeping the results current
+ * costs as much as the new lines do, no matter how large the book already is.
+ * If the book is truncated or replaced, the results are cleared and the new
+ * book is read from its beginning.
+ * <p>
+ * {@link #start()} follows the book in a background thread, which is woken up
+ * by a {@link WatchService} whenever the directory of the book changes. As
+ * some file systems do not report every change, the book is also checked
+ * after some time without any event. The results can be read by any thread at
+ * any time.
+ *
+ * @author Bruno Toffolo
+ */
+public class BookFollower implements Closeable {
+
+    private static final Path BOOK_PATH = Paths.get("resources/pg74.txt");
+
+    /** Time after which the book is checked even if no change was reported. */
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Path bookPath;
+    private final Predicate<String> filter;
+    private final Predicate<String> startsWithUppercase = LinePredicates.startsWithUppercase();
+    private final FileTailer tailer;
+
+    private final List<String> matchingLines = new ArrayList<>();
+    private LengthStatistics uppercaseStatistics = new LengthStatistics(10, 10);
+    private long lineCount;
+
+    private WatchService watcher;
+    private Thread thread;
+
+    public static void main(String[] args) throws InterruptedException {
+        // Another "process" writes the book into a new file, a few thousand lines at a time,
+        // while the follower keeps the results of the lines written so far up to date
+        try {
+            List<String> book = Files.readAllLines(BOOK_PATH);
+            Path growingBook = Files.createTempFile("pg74", ".txt");
+            try (BookFollower follower = new BookFollower(growingBook, AhoCorasickMatcher.of(BookParser.DESIRED_WORD))) {
+                follower.start();
+                for (int from = 0; from < book.size(); from += 2000) {
+                    List<String> chunk = book.subList(from, Math.min(from + 2000, book.size()));
+                    Files.write(growingBook, chunk, StandardOpenOption.APPEND);
+                    Thread.sleep(200);
+                    System.out.println("After " + (from + chunk.size()) + " lines were written: " +
+                            follower.getLineCount() + " lines read, " + follower.getMatchingLines().size() +
+                            " containing the word, " + follower.getUppercaseStatistics().getCount() +
+                            " starting with an uppercase letter.");
+                }
+
+                // The thread may not have been woken up yet, so the book is read right away
+                follower.poll();
+                System.out.println("The whole book was followed: " + follower.getMatchingLines().size() +
+                        " lines contain the word, the same as when the book is parsed at once: " +
+                        follower.getMatchingLines().equals(BookParser.manualListIteration(book,
+                                AhoCorasickMatcher.of(BookParser.DESIRED_WORD))));
+            } finally {
+                Files.delete(growingBook);
+            }
+        } catch (IOException e) {
+            System.err.println("Error while following the book file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a follower of a book, which is not read until {@link #poll()} or
+     * {@link #start()} are called.
+     *
+     * @param bookPath Path of the book file, which does not need to exist yet
+     * @param filter Filter that checks if a line contains the desired word
+     */
+    public BookFollower(Path bookPath, Predicate<String> filter) {
+        this.bookPath = bookPath.toAbsolutePath();
+        this.filter = filter;
+        this.tailer = new FileTailer(this.bookPath);
+    }
+
+    /**
+     * Reads the lines appended to the book since the last read and updates the
+     * results with them.
+     *
+     * @return Number of new lines
+     * @throws IOException If the book can not be read
+     */
+    public int poll() throws IOException {
+        synchronized (tailer) {
+            return tailer.readAppended(new FileTailer.Listener() {
+                @Override
+                public void restarted() {
+                    clear();
+                }
+
+                @Override
+                public void line(String line) {
+                    accept(line);
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts following the book in a background thread, which reads the new
+     * lines as soon as they are written, until the follower is closed.
+     *
+     * @throws IOException If the directory of the book can not be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Follower was already started");
+        }
+
+        watcher = bookPath.getFileSystem().newWatchService();
+        bookPath.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::follow, "book-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads the book whenever its directory reports a change to it, or after
+     * some time without any change, until the watch service is closed.
+     */
+    private void follow() {
+        WatchService watcher;
+        synchronized (this) {
+            watcher = this.watcher;
+        }
+
+        try {
+            poll();
+            while (true) {
+                WatchKey key = watcher.poll(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // The events only tell that something in the directory changed, even
+                    // when they were lost, and the tailer finds out what the book gained
+                    key.pollEvents();
+                    key.reset();
+                }
+                poll();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The follower was closed
+        } catch (IOException e) {
+            System.err.println("Error while following the book file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the number of lines read from the book.
+     *
+     * @return Number of lines
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the lines read so far that contain the desired word.
+     *
+     * @return Copy of the matching lines, converted to uppercase
+     */
+    public synchronized List<String> getMatchingLines() {
+        return new ArrayList<>(matchingLines);
+    }
+
+    /**
+     * Gets the statistics of the lengths of the lines read so far that start
+     * with an uppercase letter.
+     *
+     * @return Copy of the statistics
+     */
+    public synchronized LengthStatistics getUppercaseStatistics() {
+        LengthStatistics statistics = new LengthStatistics(10, 10);
+        statistics.combine(uppercaseStatistics);
+        return statistics;
+    }
+
+    private synchronized void accept(String line) {
+        lineCount++;
+        if (filter.test(line)) {
+            matchingLines.add(line.toUpperCase());
+        }
+        if (startsWithUppercase.test(line)) {
+            uppercaseStatistics.accept(line.length());
+        }
+    }
+
+    private synchronized void clear() {
+        lineCount = 0;
+        matchingLines.clear();
+        uppercaseStatistics = new LengthStatistics(10, 10);
+    }
+
+    /**
+     * Stops following the book and closes it.
+     *
+     * @throws IOException If the book or the watch service can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (tailer) {
+            tailer.close();
+        }
+    }
+
+}
@@ -1,22 +1,38 @@
 package com.brunotoffolo.codewithme.streams.business;
 
+import com.brunotoffolo.codewithme.streams.index.InvertedIndex;
+import com.brunotoffolo.codewithme.streams.index.InvertedIndexWriter;
+import com.brunotoffolo.codewithme.streams.index.NgramCounter;
+import com.brunotoffolo.codewithme.streams.io.LineSearchCache;
+import com.brunotoffolo.codewithme.streams.io.LineSpliterator;
+import com.brunotoffolo.codewithme.streams.io.MappedLineSearcher;
+import com.brunotoffolo.codewithme.streams.io.SwarLineSearcher;
+import com.brunotoffolo.codewithme.streams.util.AhoCorasickMatcher;
+import com.brunotoffolo.codewithme.streams.util.LengthStatistics;
+import com.brunotoffolo.codewithme.streams.util.LinePredicates;
+import com.brunotoffolo.codewithme.streams.util.MoreCollectors;
+
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.OptionalDouble;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Simple class used to parse the contents of a book and demonstrate some
  * useful aspects of Java 8 streams.
  * <p>
- * The time measurements realized in this class should not be seen as a
- * real benchmark as they do not perform any kind of warm-up and do not
- * handle cache or other things that may impact the execution time for the
- * operations. They are just for simple demonstration purposes.
+ * This class only checks that all the strategies produce the same results.
+ * Their execution times are measured by the {@code BookParserBenchmark} class
+ * of the java-benchmarks module, which performs a proper warm-up and runs
+ * every strategy over books of different sizes.
  * <p>
  * This example is based in a plain text version of the book "The Adventures
  * of Tom Sawyer", by Mark Twain, as available in Project Gutenberg's site
@@ -26,30 +42,58 @@ import java.util.stream.Collectors;
  */
 public class BookParser {
 
-    private static final String DESIRED_WORD = " even ";
+    static final String DESIRED_WORD = " even ";
+
+    private static final Path BOOK_PATH = Paths.get("resources/pg74.txt");
+
+    private static final Path INDEX_PATH = Paths.get("resources/pg74.idx");
+
+    /** Memory the cached search results may take. */
+    private static final long CACHE_MEMORY_BUDGET = 16L * 1024 * 1024;
+
+    /** Memory each thread may take to count n-grams before spilling them to disk. */
+    private static final long NGRAM_MEMORY_BUDGET = 64L * 1024 * 1024;
 
     public static void main(String[] args) {
-        List<String> bookWordsList;
+        List<String> bookWordsList = readBook(BOOK_PATH);
 
-        try {
-            bookWordsList = Files.readAllLines(Paths.get("resources/pg74.txt"), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            bookWordsList = new ArrayList<>();
-        }
+        // Every strategy receives the filter that decides which lines are wanted. A
+        // multi-pattern matcher finds any number of words in a single pass per line,
+        // so the same code could look for thousands of words instead of only one.
+        Predicate<String> filter = AhoCorasickMatcher.of(DESIRED_WORD);
 
-        List<String> manualListIteration = manualListIteration(bookWordsList);
+        List<String> manualListIteration = manualListIteration(bookWordsList, filter);
         List<String> manualArrayIteration = manualArrayIteration(
-                bookWordsList.toArray(new String[bookWordsList.size()]));
-        List<String> sequentialStreamIteration = sequentialStreamIteration(bookWordsList);
-        List<String> parallelStreamIteration = parallelStreamIteration(bookWordsList);
+                bookWordsList.toArray(new String[bookWordsList.size()]), filter);
+        List<String> sequentialStreamIteration = sequentialStreamIteration(bookWordsList, filter);
+        List<String> parallelStreamIteration = parallelStreamIteration(bookWordsList, filter);
+        List<String> mappedFileSearch = mappedFileSearch(BOOK_PATH);
+        List<String> swarFileSearch = swarFileSearch(BOOK_PATH);
+
+        // Repeated searches over a book that did not change are answered by the cache
+        LineSearchCache cache = new LineSearchCache(CACHE_MEMORY_BUDGET);
+        List<String> cachedFileSearch = cachedFileSearch(cache, BOOK_PATH);
+        List<String> repeatedCachedFileSearch = cachedFileSearch(cache, BOOK_PATH);
+        List<String> parallelFileStreamIteration = parallelFileStreamIteration(BOOK_PATH, filter);
+        System.out.println("Lines containing the word: " + manualListIteration.size());
 
         if (!manualListIteration.equals(manualArrayIteration) ||
                 !manualListIteration.equals(sequentialStreamIteration) ||
-                !manualListIteration.equals(parallelStreamIteration)) {
+                !manualListIteration.equals(parallelStreamIteration) ||
+                !manualListIteration.equals(mappedFileSearch) ||
+                !manualListIteration.equals(swarFileSearch) ||
+                !manualListIteration.equals(cachedFileSearch) ||
+                !manualListIteration.equals(repeatedCachedFileSearch) ||
+                !manualListIteration.equals(parallelFileStreamIteration)) {
             System.err.println("Methods do not generate the same results");
         }
+        System.out.println("Cached searches: " + cache);
 
         countLinesThatStartWithUppercase(bookWordsList);
+
+        indexedWordLookup(BOOK_PATH, INDEX_PATH, DESIRED_WORD.trim());
+
+        mostFrequentTerms(BOOK_PATH, 10);
     }
 
     /**
@@ -57,18 +101,16 @@ public class BookParser {
      * Performs this operation through the usual Java 7 approach, iterating a list.
      *
      * @param bookWordsList Book contents
+     * @param filter Filter that checks if a line contains the word
      * @return List of lines that contain the word, converted to uppercase
      */
-    private static List<String> manualListIteration(List<String> bookWordsList) {
-        long startManualList = System.currentTimeMillis();
+    static List<String> manualListIteration(List<String> bookWordsList, Predicate<String> filter) {
         List<String> manuallyFilteredList = new ArrayList<>();
         for (String line : bookWordsList) {
-            if (line.contains(DESIRED_WORD)) {
+            if (filter.test(line)) {
                 manuallyFilteredList.add(line.toUpperCase());
             }
         }
-        long endManualList = System.currentTimeMillis();
-        System.out.println("Java 7 for-each in a list: " + (endManualList - startManualList));
         return manuallyFilteredList;
     }
 
@@ -78,18 +120,16 @@ public class BookParser {
      * array of Strings.
      *
      * @param bookWordsArray Book contents
+     * @param filter Filter that checks if a line contains the word
      * @return List of lines that contain the word, converted to uppercase
      */
-    private static List<String> manualArrayIteration(String[] bookWordsArray) {
-        long startManualArray = System.currentTimeMillis();
+    static List<String> manualArrayIteration(String[] bookWordsArray, Predicate<String> filter) {
         List<String> manuallyFilteredArray = new ArrayList<>();
         for (String line : bookWordsArray) {
-            if (line.contains(DESIRED_WORD)) {
+            if (filter.test(line)) {
                 manuallyFilteredArray.add(line.toUpperCase());
             }
         }
-        long endManualArray = System.currentTimeMillis();
-        System.out.println("Java 7 for-each in an array: " + (endManualArray - startManualArray));
         return manuallyFilteredArray;
     }
 
@@ -99,16 +139,14 @@ public class BookParser {
      * Stream.
      *
      * @param bookWordsList Book contents
+     * @param filter Filter that checks if a line contains the word
      * @return List of lines that contain the word, converted to uppercase
      */
-    private static List<String> sequentialStreamIteration(List<String> bookWordsList) {
-        long startSequentialStream = System.currentTimeMillis();
+    static List<String> sequentialStreamIteration(List<String> bookWordsList, Predicate<String> filter) {
         List<String> sequentialStream = bookWordsList.stream()
-                .filter(line -> line.contains(DESIRED_WORD))
+                .filter(filter)
                 .map(line -> line.toUpperCase())
                 .collect(Collectors.toList());
-        long endSequentialStream = System.currentTimeMillis();
-        System.out.println("Java 8 sequential stream: " + (endSequentialStream - startSequentialStream));
         return sequentialStream;
     }
 
@@ -118,41 +156,219 @@ public class BookParser {
      * Stream.
      *
      * @param bookWordsList Book contents
+     * @param filter Filter that checks if a line contains the word
      * @return List of lines that contain the word, converted to uppercase
      */
-    private static List<String> parallelStreamIteration(List<String> bookWordsList) {
-        long startParallelStream = System.currentTimeMillis();
+    static List<String> parallelStreamIteration(List<String> bookWordsList, Predicate<String> filter) {
         List<String> parallelStream = bookWordsList.parallelStream()
-                .filter(line -> line.contains(DESIRED_WORD))
+                .filter(filter)
                 .map(line -> line.toUpperCase())
                 .collect(Collectors.toList());
-        long endParallelStream = System.currentTimeMillis();
-        System.out.println("Java 8 parallel stream: " + (endParallelStream - startParallelStream));
         return parallelStream;
     }
 
+    /**
+     * Searches for the number of lines that contain a specific word in the book.
+     * Performs this operation through a parallel Stream that is created straight
+     * from the book file. Differently from {@link #parallelStreamIteration}, the
+     * file is split into byte ranges that are read, decoded and filtered in
+     * parallel, instead of being read into a list by a single thread first.
+     *
+     * @param bookPath Path of the book file
+     * @param filter Filter that checks if a line contains the word
+     * @return List of lines that contain the word, converted to uppercase
+     */
+    static List<String> parallelFileStreamIteration(Path bookPath, Predicate<String> filter) {
+        try (Stream<String> lines = LineSpliterator.lines(bookPath, true)) {
+            return lines
+                    .filter(filter)
+                    .map(line -> line.toUpperCase())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            System.err.println("Error while reading the book file: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Searches for the number of lines that contain a specific word in the book.
+     * Performs this operation directly over the book file, which is memory-mapped
+     * and scanned as raw bytes instead of being read into a list of Strings. Only
+     * the lines that contain the word are decoded, so the heap usage does not grow
+     * with the size of the book.
+     *
+     * @param bookPath Path of the book file
+     * @return List of lines that contain the word, converted to uppercase
+     */
+    static List<String> mappedFileSearch(Path bookPath) {
+        List<String> mappedFile = new ArrayList<>();
+        try {
+            new MappedLineSearcher(bookPath, DESIRED_WORD).forEachMatch(line -> mappedFile.add(line.toUpperCase()));
+        } catch (IOException e) {
+            System.err.println("Error while searching the book file: " + e.getMessage());
+        }
+        return mappedFile;
+    }
+
+    /**
+     * Searches for the number of lines that contain a specific word in the book.
+     * Performs this operation over the memory-mapped book file, just like
+     * {@link #mappedFileSearch}, but the raw bytes are compared eight at a time
+     * and the word is searched in the whole file at once, so the ends of a line
+     * are only looked for around the occurrences of the word.
+     *
+     * @param bookPath Path of the book file
+     * @return List of lines that contain the word, converted to uppercase
+     */
+    static List<String> swarFileSearch(Path bookPath) {
+        List<String> swarFile = new ArrayList<>();
+        try {
+            new SwarLineSearcher(bookPath, DESIRED_WORD).forEachMatch(line -> swarFile.add(line.toUpperCase()));
+        } catch (IOException e) {
+            System.err.println("Error while searching the book file: " + e.getMessage());
+        }
+        return swarFile;
+    }
+
+    /**
+     * Looks up the lines that contain a word through an inverted index of the book,
+     * instead of scanning all of its lines. The index is only built when it does
+     * not exist yet or is older than the book; otherwise it is just memory-mapped
+     * from disk, so repeated lookups do not need to tokenize the book again.
+     * <p>
+     * Note that the index works with whole words, so it also finds the word when
+     * it is followed by punctuation, differently from the other search methods.
+     *
+     * @param bookPath Path of the book file
+     * @param indexPath Path of the index file
+     * @param word Word to be looked up
+     */
+    private static void indexedWordLookup(Path bookPath, Path indexPath, String word) {
+        try {
+            InvertedIndex index = openIndex(bookPath, indexPath);
+            int[] lines = index.lookup(word);
+            System.out.println("The word \"" + word + "\" appears in " + lines.length + " lines.");
+        } catch (IOException e) {
+            System.err.println("Error while using the book index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Searches for the number of lines that contain a specific word in the book,
+     * in the same way as {@link #swarFileSearch}, but only when the cache does
+     * not have the lines found by the same search over the current contents of
+     * the book. A book that did not change is not read again.
+     *
+     * @param cache Cache of search results
+     * @param bookPath Path of the book file
+     * @return List of lines that contain the word, converted to uppercase
+     */
+    static List<String> cachedFileSearch(LineSearchCache cache, Path bookPath) {
+        try {
+            return cache.search(bookPath, "uppercase:" + DESIRED_WORD, path -> {
+                List<String> lines = new ArrayList<>();
+                new SwarLineSearcher(path, DESIRED_WORD).forEachMatch(line -> lines.add(line.toUpperCase()));
+                return lines;
+            });
+        } catch (IOException e) {
+            System.err.println("Error while searching the book file: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Counts all the words, bigrams and trigrams of the book and prints the most
+     * frequent ones. The book is read in parallel straight from the file, each
+     * thread counts its lines into its own counter and the counters are merged
+     * at the end, spilling to disk if they grow beyond the memory budget, so
+     * the same code works for corpora much larger than the heap.
+     *
+     * @param bookPath Path of the book file
+     * @param k Number of terms of each length to be printed
+     */
+    private static void mostFrequentTerms(Path bookPath, int k) {
+        try (Stream<String> lines = LineSpliterator.lines(bookPath, true);
+             NgramCounter counter = lines.collect(NgramCounter.collector(3, NGRAM_MEMORY_BUDGET, null))) {
+            String[] names = {"words", "bigrams", "trigrams"};
+            for (int length = 1; length <= names.length; length++) {
+                System.out.println("The book has " + counter.getTotal(length) + " " + names[length - 1] + ", " +
+                        counter.countDistinct(length) + " of them distinct. The most frequent ones are " +
+                        counter.top(length, k) + ".");
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error while counting the terms of the book: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the inverted index of the book, building it first when it does not
+     * exist yet or is older than the book.
+     *
+     * @param bookPath Path of the book file
+     * @param indexPath Path of the index file
+     * @return Opened index
+     * @throws IOException If the book or the index can not be read
+     */
+    static InvertedIndex openIndex(Path bookPath, Path indexPath) throws IOException {
+        if (!Files.exists(indexPath) ||
+                Files.getLastModifiedTime(indexPath).compareTo(Files.getLastModifiedTime(bookPath)) < 0) {
+            InvertedIndexWriter.write(bookPath, indexPath);
+        }
+        return InvertedIndex.open(indexPath);
+    }
+
+    /**
+     * Reads all the lines of the book.
+     *
+     * @param bookPath Path of the book file
+     * @return Book contents; empty if the book can not be read
+     */
+    static List<String> readBook(Path bookPath) {
+        try {
+            return Files.readAllLines(bookPath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
     /**
      * Counts how many lines start with an uppercase letter and them calculates the
      * average character count in each of them.
      * @param book Book contents
      */
     private static void countLinesThatStartWithUppercase(List<String> book) {
-        long matches = book
-                .stream()
-                .filter(r -> r.matches("[A-Z].*"))
-                .count();
-
-        // We can't reuse the same stream :(
-        OptionalDouble averageCharacters = book
-                .stream()
-                .filter(r -> r.matches("[A-Z].*"))
-                .mapToInt(r -> r.length())
-                .average();
-
-        System.out.println("There are " + matches + " lines starting with an uppercase letter.");
-
-        averageCharacters.ifPresent(value ->
-                System.out.println("They have, in average, " + value + " characters each."));
+        // We can't reuse the same stream, but we don't need to: all the statistics
+        // are computed together in a single pass. The total number of lines is also
+        // counted in the same pass, as only one of the combined collectors filters
+        // the lines that start with an uppercase letter.
+        book.stream().collect(MoreCollectors.teeing(
+                Collectors.counting(),
+                MoreCollectors.filtering(LinePredicates.startsWithUppercase(), LengthStatistics.collector(10, 10)),
+                (lines, statistics) -> {
+                    System.out.println("There are " + statistics.getCount() + " lines starting with an uppercase " +
+                            "letter, out of " + lines + " lines.");
+                    if (statistics.getCount() > 0) {
+                        System.out.println("They have, in average, " + statistics.getAverage() +
+                                " characters each, from " + statistics.getMin() + " to " + statistics.getMax() + ".");
+                        System.out.println("Lines per group of " + statistics.getBucketWidth() + " characters: " +
+                                Arrays.toString(statistics.getHistogram()));
+                    }
+                    return statistics;
+                }));
+    }
+
+    /**
+     * Computes the statistics of the lengths of the lines that start with an
+     * uppercase letter, in a single pass over the book.
+     * @param book Book contents
+     * @param parallel Whether a parallel stream should be used
+     * @return Statistics of the line lengths
+     */
+    static LengthStatistics uppercaseLineStatistics(List<String> book, boolean parallel) {
+        Stream<String> lines = parallel ? book.parallelStream() : book.stream();
+        return lines
+                .filter(LinePredicates.startsWithUppercase())
+                .collect(LengthStatistics.collector(10, 10));
     }
 
 }
@@ -1,7 +1,16 @@
 package com.brunotoffolo.codewithme.streams.business;
 
+import com.brunotoffolo.codewithme.streams.io.ExamResultFileWriter;
+import com.brunotoffolo.codewithme.streams.io.MappedExamResults;
 import com.brunotoffolo.codewithme.streams.model.ExamResult;
+import com.brunotoffolo.codewithme.streams.model.ExamResultTable;
+import com.brunotoffolo.codewithme.streams.util.DoubleIntTopKHeap;
+import com.brunotoffolo.codewithme.streams.util.TopKCollectors;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -18,22 +27,29 @@ import java.util.stream.Collectors;
  * streams. Additional examples were also introduced to demonstrate what
  * can be achieved when leveraging the power of Java streams.
  * <p>
- * The time measurements realized in this class should not be seen as a
- * real benchmark as they do not perform any kind of warm-up and do not
- * handle cache or other things that may impact the execution time for the
- * operations. They are just for simple demonstration purposes.
+ * The execution times of these operations are measured by the
+ * {@code ExamResultAnalyzerBenchmark} class of the java-benchmarks module,
+ * which performs a proper warm-up and runs them over different numbers of
+ * exam results.
  *
  * @author Bruno Toffolo
  */
 public class ExamResultAnalyzer {
 
+    private static final Path EXAM_RESULTS_PATH = Paths.get("resources/exam-results.bin");
+
+    private static final long SEED = 74L;
+
     /**
      * Main method for the example. Invokes the operations that are being
      * analyzed.
      * @param args
      */
     public static void main(String[] args) {
-        List<ExamResult> examResults = prepareExamResults(10000000L);
+        List<ExamResult> examResults = loadExamResults(EXAM_RESULTS_PATH, 10000000L, SEED);
+
+        // The same exam results stored in columns, which take much less memory
+        ExamResultTable examResultTable = ExamResultTable.of(examResults);
 
         // Simple stream expression to check if there is any very high grade
         boolean match = examResults.stream().anyMatch(r -> r.getGrade() > 9.998);
@@ -45,24 +61,115 @@ public class ExamResultAnalyzer {
         List<Integer> streamResults = streamOperations(examResults);
         System.out.println("Results match = " + manualResults.equals(streamResults));
 
+        // The same results can be obtained without sorting the whole list
+        List<Integer> manualTopKResults = manualTopKIteration(examResults);
+        List<Integer> streamTopKResults = streamTopKOperations(examResults);
+        List<Integer> parallelStreamTopKResults = parallelStreamTopKOperations(examResults);
+        System.out.println("Top-K results match = " + (manualResults.equals(manualTopKResults) &&
+                manualResults.equals(streamTopKResults) && manualResults.equals(parallelStreamTopKResults)));
+
+        // The same operations can be performed over the columnar table
+        System.out.println("Table results match = " + (match == examResultTable.anyGradeHigherThan(9.998) &&
+                manualResults.equals(tableTopKOperations(examResultTable))));
+
+        // And also straight over the file, without loading it into the heap
+        compareWithMappedFile(EXAM_RESULTS_PATH, match, manualResults);
+
         // Just another operation to demonstrate the power of streams
         getAverageGrade(examResults);
+        getAverageGrade(examResultTable);
     }
 
     /**
      * Creates a list of random exam results, consisting of a registry number and
-     * a grade for the exam.
+     * a grade for the exam. The exam results are generated in parallel, and the
+     * same seed always generates the same exam results.
      * @param size Number of exam results that should be generated
+     * @param seed Seed for the random exam results
      * @return List of random exam results
      */
-    private static List<ExamResult> prepareExamResults(long size) {
-        List<ExamResult> examResults = new ArrayList<>();
-        Random random = new Random();
-        for (int i = 0; i < size; i++) {
-            ExamResult result = new ExamResult(Math.abs(random.nextInt()), random.nextDouble() * 10);
-            examResults.add(result);
+    static List<ExamResult> prepareExamResults(long size, long seed) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A list can not hold more than " + Integer.MAX_VALUE + " exam results");
+        }
+        return new ExamResultGenerator(seed).generateList((int) size);
+    }
+
+    /**
+     * Loads the exam results saved in a file, so that every run analyzes the same
+     * exam results. When the file does not exist yet, or holds a different number
+     * of exam results or exam results generated from another seed, random exam
+     * results are created and saved into it.
+     * @param path Path of the exam results file
+     * @param size Number of exam results that should be loaded
+     * @param seed Seed from which the exam results should have been generated
+     * @return List of exam results
+     */
+    private static List<ExamResult> loadExamResults(Path path, long size, long seed) {
+        try {
+            MappedExamResults mappedResults = openExamResults(path, size, seed);
+            List<ExamResult> examResults = new ArrayList<>((int) mappedResults.size());
+            for (long i = 0; i < mappedResults.size(); i++) {
+                examResults.add(new ExamResult(mappedResults.getId(i), mappedResults.getGrade(i)));
+            }
+            return examResults;
+        } catch (IOException e) {
+            System.err.println("Error while loading the exam results file: " + e.getMessage());
+            return prepareExamResults(size, seed);
+        }
+    }
+
+    /**
+     * Maps the exam results file, generating it again when it does not hold the
+     * expected exam results. The file is only replaced once all the exam results
+     * were written, so a failed generation never leaves a partial file behind.
+     * @param path Path of the exam results file
+     * @param size Number of exam results that the file should hold
+     * @param seed Seed from which the exam results should have been generated
+     * @return Mapped exam results
+     * @throws IOException If the file can not be read nor written
+     */
+    private static MappedExamResults openExamResults(Path path, long size, long seed) throws IOException {
+        if (Files.exists(path)) {
+            try {
+                MappedExamResults mappedResults = MappedExamResults.open(path);
+                if (mappedResults.size() == size && mappedResults.getSeed() == seed) {
+                    return mappedResults;
+                }
+            } catch (IOException e) {
+                // Not a valid file for this version, so it is generated again below
+            }
+        }
+
+        try (ExamResultFileWriter writer = new ExamResultFileWriter(path, seed)) {
+            for (ExamResult result : prepareExamResults(size, seed)) {
+                writer.append(result.getId(), result.getGrade());
+            }
+            writer.commit();
+        }
+        return MappedExamResults.open(path);
+    }
+
+    /**
+     * Performs the same queries straight over the memory-mapped exam results file
+     * and checks that they match the results obtained from the list.
+     * @param path Path of the exam results file
+     * @param match Whether any student got a grade higher than 9.998
+     * @param topResults List of top 100 students
+     */
+    private static void compareWithMappedFile(Path path, boolean match, List<Integer> topResults) {
+        try {
+            MappedExamResults mappedResults = MappedExamResults.open(path);
+            List<Integer> mappedTopResults = Arrays.stream(mappedResults.topIds(100))
+                    .sorted()
+                    .boxed()
+                    .collect(Collectors.toList());
+
+            System.out.println("Mapped file results match = " +
+                    (match == mappedResults.anyGradeHigherThan(9.998) && topResults.equals(mappedTopResults)));
+        } catch (IOException e) {
+            System.err.println("Error while reading the exam results file: " + e.getMessage());
         }
-        return examResults;
     }
 
     /**
@@ -71,8 +178,7 @@ public class ExamResultAnalyzer {
      * @param examResults List of exam results
      * @return List of top 100 students
      */
-    private static List<Integer> manualIteration(List<ExamResult> examResults) {
-        long startManual = System.currentTimeMillis();
+    static List<Integer> manualIteration(List<ExamResult> examResults) {
         List<ExamResult> sortedResultList = examResults.subList(0, examResults.size());
         Collections.sort(sortedResultList);
 
@@ -88,9 +194,6 @@ public class ExamResultAnalyzer {
         // topHundredResults.forEach(result -> registries.add(result.getId()));
 
         Collections.sort(registries);
-        long endManual = System.currentTimeMillis();
-
-        System.out.println("Time consumed for manual iteration = " + (endManual - startManual));
 
         return registries;
     }
@@ -100,21 +203,85 @@ public class ExamResultAnalyzer {
      * @param examResults List of exam results
      * @return List of top 100 students
      */
-    private static List<Integer> streamOperations(List<ExamResult> examResults) {
-        long startStreams = System.currentTimeMillis();
+    static List<Integer> streamOperations(List<ExamResult> examResults) {
         List<Integer> streamRegistries = examResults.stream()
                 .sorted(Comparator.comparing(ExamResult::getGrade).reversed())
                 .limit(100)
                 .sorted(Comparator.comparing(ExamResult::getId))
                 .map(ExamResult::getId)
                 .collect(Collectors.toList());
-        long endStreams = System.currentTimeMillis();
-
-        System.out.println("Time consumed for stream operations = " + (endStreams - startStreams));
 
         return streamRegistries;
     }
 
+    /**
+     * Performs a manual iteration over all exam results to retrieve the top 100
+     * students. Instead of sorting the whole list, only the 100 highest grades
+     * found so far are kept in a bounded heap while the list is traversed.
+     * @param examResults List of exam results
+     * @return List of top 100 students
+     */
+    static List<Integer> manualTopKIteration(List<ExamResult> examResults) {
+        DoubleIntTopKHeap topHundredResults = new DoubleIntTopKHeap(100);
+        for (ExamResult result : examResults) {
+            topHundredResults.offer(result.getGrade(), result.getId());
+        }
+
+        List<Integer> registries = new ArrayList<>();
+        for (int id : topHundredResults.values()) {
+            registries.add(id);
+        }
+
+        Collections.sort(registries);
+        return registries;
+    }
+
+    /**
+     * Uses stream operations to retrieve the top 100 students from the exam results list.
+     * A top-K collector replaces the sorting and limiting of the whole stream.
+     * @param examResults List of exam results
+     * @return List of top 100 students
+     */
+    static List<Integer> streamTopKOperations(List<ExamResult> examResults) {
+        return examResults.stream()
+                .collect(TopKCollectors.greatest(100, Comparator.comparing(ExamResult::getGrade)))
+                .stream()
+                .map(ExamResult::getId)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Uses a parallel stream to retrieve the top 100 students from the exam results list.
+     * Each thread keeps its own top 100 grades, without boxing them, and these partial
+     * results are merged at the end.
+     * @param examResults List of exam results
+     * @return List of top 100 students
+     */
+    static List<Integer> parallelStreamTopKOperations(List<ExamResult> examResults) {
+        int[] ids = examResults.parallelStream()
+                .collect(TopKCollectors.greatestByDouble(100, ExamResult::getGrade, ExamResult::getId))
+                .values();
+
+        return Arrays.stream(ids)
+                .sorted()
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the top 100 students from a columnar table of exam results, whose
+     * grades are traversed as a primitive array.
+     * @param examResultTable Table of exam results
+     * @return List of top 100 students
+     */
+    static List<Integer> tableTopKOperations(ExamResultTable examResultTable) {
+        return Arrays.stream(examResultTable.topIds(100))
+                .sorted()
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
     /**
      * Gets the average grade for all the students that took the exam.
      * @param examResults List of exam results
@@ -127,4 +294,13 @@ public class ExamResultAnalyzer {
         average.ifPresent(System.out::println);
     }
 
+    /**
+     * Gets the average grade for all the students that took the exam, from a
+     * columnar table of exam results.
+     * @param examResultTable Table of exam results
+     */
+    private static void getAverageGrade(ExamResultTable examResultTable) {
+        examResultTable.averageGrade().ifPresent(System.out::println);
+    }
+
 }
@@ -0,0 +1,123 @@
+package com.brunotoffolo.codewithme.streams.business;
+
+import com.brunotoffolo.codewithme.streams.model.ExamResult;
+import com.brunotoffolo.codewithme.streams.model.ExamResultTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Generates random exam results in parallel, always producing the same exam
+ * results for the same seed.
+ * <p>
+ * The exam results are divided into fixed-size blocks, and each block is
+ * filled by its own {@link SplittableRandom}, whose seed is derived only from
+ * the generator seed and the position of the block. The blocks are filled by a
+ * parallel stream, so the work is spread over the fork-join pool, but as no
+ * generator is shared between threads and the blocks do not depend on how the
+ * work was divided, the output is the same for any number of threads.
+ * <p>
+ * The exam results are written straight into presized arrays, without any
+ * synchronization or intermediate collection.
+ *
+ * @author Bruno Toffolo
+ */
+public class ExamResultGenerator {
+
+    /** Number of exam results generated by the same random number generator. */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final long seed;
+
+    /**
+     * Creates a generator for the given seed.
+     *
+     * @param seed Seed that defines the generated exam results
+     */
+    public ExamResultGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generates a table of random exam results.
+     *
+     * @param size Number of exam results
+     * @return Table of exam results
+     */
+    public ExamResultTable generateTable(int size) {
+        int[] ids = new int[checkSize(size)];
+        double[] grades = new double[size];
+
+        blocks(size).forEach(block -> {
+            SplittableRandom random = randomForBlock(block);
+            int end = blockEnd(block, size);
+            for (int i = block * BLOCK_SIZE; i < end; i++) {
+                ids[i] = nextId(random);
+                grades[i] = nextGrade(random);
+            }
+        });
+
+        return ExamResultTable.wrap(ids, grades);
+    }
+
+    /**
+     * Generates a list of random exam results, with the same exam results that
+     * {@link #generateTable} would generate for the same size.
+     *
+     * @param size Number of exam results
+     * @return List of exam results
+     */
+    public List<ExamResult> generateList(int size) {
+        ExamResult[] examResults = new ExamResult[checkSize(size)];
+
+        blocks(size).forEach(block -> {
+            SplittableRandom random = randomForBlock(block);
+            int end = blockEnd(block, size);
+            for (int i = block * BLOCK_SIZE; i < end; i++) {
+                int id = nextId(random);
+                examResults[i] = new ExamResult(id, nextGrade(random));
+            }
+        });
+
+        return new ArrayList<>(Arrays.asList(examResults));
+    }
+
+    private static IntStream blocks(int size) {
+        return IntStream.range(0, (int) ((size + (long) BLOCK_SIZE - 1) / BLOCK_SIZE)).parallel();
+    }
+
+    private static int blockEnd(int block, int size) {
+        return (int) Math.min((long) (block + 1) * BLOCK_SIZE, size);
+    }
+
+    /**
+     * Creates the random number generator of a block. Its seed mixes the block
+     * position into the generator seed, so that neighbouring blocks get
+     * unrelated sequences of numbers.
+     */
+    private SplittableRandom randomForBlock(int block) {
+        long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    private static int nextId(SplittableRandom random) {
+        return random.nextInt() & Integer.MAX_VALUE;
+    }
+
+    private static double nextGrade(SplittableRandom random) {
+        return random.nextDouble() * 10;
+    }
+
+    private static int checkSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Number of exam results should not be negative");
+        }
+        return size;
+    }
+
+}
@@ -1,6 +1,11 @@
 package com.brunotoffolo.codewithme.streams.business;
 
+import com.brunotoffolo.codewithme.streams.util.DoubleDistinct;
+import com.brunotoffolo.codewithme.streams.util.ParallelSources;
+
+import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 /**
@@ -12,23 +17,89 @@ import java.util.stream.Stream;
 public class InfiniteStream {
 
     public static void main(String[] args) {
-        System.out.println("Maximum random number = " + maxRandomNumber());
+        System.out.println("Maximum random number = " + maxRandomNumber(10000000L));
+        System.out.println("Maximum random number (primitive) = " + primitiveMaxRandomNumber(10000000L));
+        System.out.println("Maximum random number (approximate) = " + approximateMaxRandomNumber(10000000L));
+        System.out.println("Maximum random number (parallel) = " + maxRandomNumber(10000000L, true));
         System.out.println("Gaussian Sum = " + gaussianSum());
+        System.out.println("Gaussian Sum up to 10000000 (parallel) = " + gaussianSum(10000000L, true));
     }
 
     /**
      * Generates a stream of random numbers and calculates the maximum
      * between the generated values.
      *
+     * @param count Number of values to be skipped and then considered
      * @return Maximum generated value
      */
-    private static double maxRandomNumber() {
+    static double maxRandomNumber(long count) {
         Stream<Double> randomNumbers = Stream.generate(Math::random);
 
         return randomNumbers
-                .skip(10000000L)
+                .skip(count)
+                .distinct()
+                .limit(count)
+                .reduce(Double.MIN_VALUE, Double::max);
+    }
+
+    /**
+     * Generates a stream of random numbers and calculates the maximum
+     * between the generated values, as {@link #maxRandomNumber} does, but
+     * without boxing the numbers. Repeated numbers are discarded through a
+     * primitive hash set instead of the {@code HashSet<Double>} used by
+     * {@link java.util.stream.Stream#distinct()}.
+     *
+     * @param count Number of values to be skipped and then considered
+     * @return Maximum generated value
+     */
+    static double primitiveMaxRandomNumber(long count) {
+        DoubleStream randomNumbers = DoubleStream.generate(Math::random).skip(count);
+
+        return DoubleDistinct.exact(randomNumbers)
+                .limit(count)
+                .reduce(Double.MIN_VALUE, Double::max);
+    }
+
+    /**
+     * Same as {@link #primitiveMaxRandomNumber}, but discarding the repeated
+     * numbers through a Bloom filter, which uses a small fixed amount of memory
+     * at the cost of also discarding about 1% of the numbers that were not
+     * repeated.
+     *
+     * @param count Number of values to be skipped and then considered
+     * @return Maximum generated value
+     */
+    static double approximateMaxRandomNumber(long count) {
+        DoubleStream randomNumbers = DoubleStream.generate(Math::random).skip(count);
+
+        return DoubleDistinct.approximate(randomNumbers, count, 0.01)
+                .limit(count)
+                .reduce(Double.MIN_VALUE, Double::max);
+    }
+
+    /**
+     * Generates a stream of random numbers and calculates the maximum
+     * between the generated values, as {@link #maxRandomNumber(long)} does,
+     * but from a source that can be split between the threads of a parallel
+     * stream. Each thread generates its own numbers through its
+     * {@link java.util.concurrent.ThreadLocalRandom}, and as the stream is
+     * unordered, skipping, discarding the repeated numbers and limiting the
+     * stream do not require the threads to wait for each other.
+     *
+     * @param count Number of values to be skipped and then considered
+     * @param parallel Whether the numbers should be generated in parallel
+     * @return Maximum generated value
+     */
+    static double maxRandomNumber(long count, boolean parallel) {
+        DoubleStream randomNumbers = ParallelSources.randomDoubles();
+        if (parallel) {
+            randomNumbers = randomNumbers.parallel();
+        }
+
+        return randomNumbers
+                .skip(count)
                 .distinct()
-                .limit(10000000L)
+                .limit(count)
                 .reduce(Double.MIN_VALUE, Double::max);
     }
 
@@ -38,11 +109,33 @@ public class InfiniteStream {
      *
      * @return Value of the sum
      */
-    private static int gaussianSum() {
+    static int gaussianSum() {
         IntStream sequentialStream = IntStream.iterate(1, r -> r + 1);
 
         return sequentialStream
                 .limit(100)
                 .reduce(0, (a, b) -> a + b);
     }
+
+    /**
+     * Calculates the sum of all integer numbers from 1 to the given number.
+     * Differently from {@link #gaussianSum()}, the numbers are produced from
+     * the closed form of the n-th number of the sequence instead of from the
+     * previous number, so the sum can be split between the threads of a
+     * parallel stream.
+     *
+     * @param last Last number of the sum
+     * @param parallel Whether the sum should be calculated in parallel
+     * @return Value of the sum
+     */
+    static long gaussianSum(long last, boolean parallel) {
+        LongStream numbers = ParallelSources.iterate(n -> n + 1);
+        if (parallel) {
+            numbers = numbers.parallel();
+        }
+
+        return numbers
+                .limit(last)
+                .sum();
+    }
 }
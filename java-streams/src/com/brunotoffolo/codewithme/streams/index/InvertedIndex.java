@@ -0,0 +1,237 @@
+package com.brunotoffolo.codewithme.streams.index;
+
+import com.brunotoffolo.codewithme.streams.util.WordTokenizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only inverted index that maps every word of a corpus to the numbers of
+ * the lines in which it appears.
+ * <p>
+ * The index is memory-mapped straight from the file generated by the
+ * {@link InvertedIndexWriter}, so opening it does not read nor tokenize the
+ * corpus again, and looking up a word is just a binary search over the mapped
+ * dictionary followed by the decoding of its postings. The file has the
+ * following layout, with all integers in big-endian order:
+ * <pre>
+ * header     magic, version, line count, term count (4 ints)
+ * entries    term offset, term length, postings offset, postings count (4 ints per term)
+ * terms      UTF-8 bytes of every term, sorted in unsigned byte order
+ * postings   delta-encoded line numbers of every term, as unsigned varints
+ * </pre>
+ * When the index is opened, the header and the offsets of every entry are
+ * checked against the size of the file, so a truncated or corrupted file is
+ * rejected up front instead of failing in the middle of a lookup. The index can
+ * be shared between threads, as lookups only perform absolute reads over the
+ * mapped file.
+ *
+ * @author Bruno Toffolo
+ */
+public class InvertedIndex {
+
+    static final int MAGIC = 0x43574958;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final ByteBuffer buffer;
+    private final int lineCount;
+    private final int termCount;
+
+    private InvertedIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("File is not an inverted index");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported inverted index version " + buffer.getInt(4));
+        }
+
+        this.buffer = buffer;
+        this.lineCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        validate();
+    }
+
+    /**
+     * Checks that every entry points to terms and postings inside the file, in
+     * the order the {@link InvertedIndexWriter} writes them, and that the
+     * postings of the last term end exactly at the end of the file.
+     *
+     * @throws IOException If the index is truncated or corrupted
+     */
+    private void validate() throws IOException {
+        int size = buffer.capacity();
+        long termsStart = HEADER_SIZE + (long) termCount * ENTRY_SIZE;
+        if (lineCount < 0 || termCount < 0 || termsStart > size) {
+            throw new IOException("Inverted index is truncated or corrupted");
+        }
+
+        long postingsStart = termsStart;
+        int previousCount = 0;
+        for (int i = 0; i < termCount; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            int termOffset = buffer.getInt(entry);
+            int termLength = buffer.getInt(entry + 4);
+            int postingsOffset = buffer.getInt(entry + 8);
+            int postingsCount = buffer.getInt(entry + 12);
+
+            // Every posting takes at least one byte, up to the postings of the next term
+            if (termOffset < termsStart || termLength < 0 || (long) termOffset + termLength > size
+                    || postingsOffset < postingsStart + previousCount || postingsOffset > size
+                    || postingsCount < 0 || postingsCount > size - postingsOffset) {
+                throw new IOException("Inverted index is truncated or corrupted");
+            }
+            postingsStart = postingsOffset;
+            previousCount = postingsCount;
+        }
+
+        int end = (int) postingsStart;
+        for (int i = 0; i < previousCount; i++) {
+            do {
+                if (end >= size) {
+                    throw new IOException("Inverted index is truncated or corrupted");
+                }
+            } while (buffer.get(end++) < 0);
+        }
+        if (end != size) {
+            throw new IOException("Inverted index is truncated or corrupted");
+        }
+    }
+
+    /**
+     * Opens an index previously saved by the {@link InvertedIndexWriter}.
+     *
+     * @param indexFile Path of the index file
+     * @return Opened index
+     * @throws IOException If the file can not be read or is not a valid index
+     */
+    public static InvertedIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index is too big to be mapped into memory");
+            }
+            return new InvertedIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Gets the numbers of the lines in which the word appears.
+     *
+     * @param word Word to be looked up. It is normalized in the same way as the
+     *             words of the corpus were when the index was built.
+     * @return Line numbers in ascending order; empty if the word is not indexed
+     */
+    public int[] lookup(String word) {
+        int entry = findEntry(word);
+        if (entry < 0) {
+            return NO_POSTINGS;
+        }
+
+        int offset = buffer.getInt(entry + 8);
+        int[] lines = new int[buffer.getInt(entry + 12)];
+        int line = 0;
+        for (int i = 0; i < lines.length; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(offset++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            line = (i == 0) ? delta : line + delta;
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    /**
+     * Gets in how many lines the word appears, without decoding its postings.
+     *
+     * @param word Word to be looked up
+     * @return Number of lines containing the word
+     */
+    public int getLineFrequency(String word) {
+        int entry = findEntry(word);
+        return entry < 0 ? 0 : buffer.getInt(entry + 12);
+    }
+
+    /**
+     * Gets the number of lines of the indexed corpus.
+     *
+     * @return Number of lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the number of distinct words in the indexed corpus.
+     *
+     * @return Number of words
+     */
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Searches the dictionary of the index for the given word.
+     *
+     * @param word Word to be found
+     * @return Offset of the entry of the word; -1 if it is not indexed
+     */
+    private int findEntry(String word) {
+        byte[] term = WordTokenizer.normalize(word).getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_SIZE + middle * ENTRY_SIZE;
+            int comparison = compareTerm(buffer.getInt(entry), buffer.getInt(entry + 4), term);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTerm(int offset, int length, byte[] term) {
+        int common = Math.min(length, term.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Integer.compare(buffer.get(offset + i) & 0xFF, term[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, term.length);
+    }
+
+    /**
+     * Compares two byte arrays in unsigned lexicographic order, which for UTF-8
+     * encoded text is the same as the code point order.
+     */
+    static int compareUnsigned(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+}
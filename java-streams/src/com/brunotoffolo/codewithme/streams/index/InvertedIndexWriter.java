@@ -0,0 +1,152 @@
+package com.brunotoffolo.codewithme.streams.index;
+
+import com.brunotoffolo.codewithme.streams.util.WordTokenizer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link InvertedIndex} for a text corpus and saves it into a file.
+ * <p>
+ * The corpus is read line by line and split into words by the
+ * {@link WordTokenizer}. For each word, the numbers of the lines in which it
+ * appears (its postings) are kept already compressed: every line number is
+ * stored as the difference to the previous one, encoded as a variable-length
+ * integer, so frequent words take about one byte per line.
+ * <p>
+ * The layout of the generated file is described in {@link InvertedIndex}. The
+ * index is written into a temporary file next to it and only moved into place
+ * once complete, so an interrupted build never leaves a truncated index behind.
+ *
+ * @author Bruno Toffolo
+ */
+public final class InvertedIndexWriter {
+
+    private InvertedIndexWriter() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Builds the index for the given UTF-8 corpus and writes it into a file.
+     * Lines are numbered from zero, in the same way as they would be indexed in
+     * the list returned by {@link Files#readAllLines(Path)}.
+     *
+     * @param corpus Path of the text corpus
+     * @param indexFile Path of the file in which the index will be saved
+     * @throws IOException If the corpus can not be read or the index can not be written
+     */
+    public static void write(Path corpus, Path indexFile) throws IOException {
+        Map<String, Postings> postingsByTerm = new HashMap<>();
+        int lineCount = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int lineNumber = lineCount++;
+                WordTokenizer.forEachWord(line, word ->
+                        postingsByTerm.computeIfAbsent(word, w -> new Postings()).add(lineNumber));
+            }
+        }
+
+        // Terms are sorted by their UTF-8 bytes, which is the same order used by
+        // the binary search performed over the mapped file
+        List<byte[]> terms = new ArrayList<>(postingsByTerm.size());
+        for (String term : postingsByTerm.keySet()) {
+            terms.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        terms.sort(InvertedIndex::compareUnsigned);
+
+        int termBytes = 0;
+        for (byte[] term : terms) {
+            termBytes += term.length;
+        }
+
+        Path directory = indexFile.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp");
+        try {
+            writeIndex(temporary, lineCount, terms, termBytes, postingsByTerm);
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes the header, the entries, the terms and the postings of the index.
+     */
+    private static void writeIndex(Path indexFile, int lineCount, List<byte[]> terms, int termBytes,
+                                   Map<String, Postings> postingsByTerm) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            out.writeInt(InvertedIndex.MAGIC);
+            out.writeInt(InvertedIndex.VERSION);
+            out.writeInt(lineCount);
+            out.writeInt(terms.size());
+
+            int termOffset = InvertedIndex.HEADER_SIZE + terms.size() * InvertedIndex.ENTRY_SIZE;
+            int postingsOffset = termOffset + termBytes;
+            for (byte[] term : terms) {
+                Postings postings = postingsByTerm.get(new String(term, StandardCharsets.UTF_8));
+                out.writeInt(termOffset);
+                out.writeInt(term.length);
+                out.writeInt(postingsOffset);
+                out.writeInt(postings.count);
+                termOffset += term.length;
+                postingsOffset += postings.size;
+                if (postingsOffset < 0) {
+                    throw new IOException("Index is too big to be stored in a single file");
+                }
+            }
+
+            for (byte[] term : terms) {
+                out.write(term);
+            }
+            for (byte[] term : terms) {
+                Postings postings = postingsByTerm.get(new String(term, StandardCharsets.UTF_8));
+                out.write(postings.bytes, 0, postings.size);
+            }
+        }
+    }
+
+    /**
+     * Delta- and varint-encoded list of line numbers in which a term appears.
+     */
+    private static final class Postings {
+
+        private byte[] bytes = new byte[4];
+        private int size;
+        private int count;
+        private int lastLine = -1;
+
+        private void add(int line) {
+            // A word repeated in the same line is only indexed once
+            if (line == lastLine) {
+                return;
+            }
+
+            int delta = (lastLine < 0) ? line : line - lastLine;
+            lastLine = line;
+            count++;
+
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((delta & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[size++] = (byte) delta;
+        }
+    }
+
+}
@@ -0,0 +1,550 @@
+package com.brunotoffolo.codewithme.streams.index;
+
+import com.brunotoffolo.codewithme.streams.util.TermCounter;
+import com.brunotoffolo.codewithme.streams.util.TopKHeap;
+import com.brunotoffolo.codewithme.streams.util.WordTokenizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Counts the words of a corpus and the sequences of consecutive words in it,
+ * known as n-grams: pairs of words (bigrams), triples of words (trigrams) and
+ * so on, up to a maximum length.
+ * <p>
+ * Lines are split into words by the {@link WordTokenizer}, and the n-grams of
+ * each length are counted by their own {@link TermCounter}, with the words of
+ * an n-gram separated by a space. N-grams are made of the words of a single
+ * line, so the counts do not depend on how the corpus is split among threads.
+ * Every word and n-gram is built in a reused buffer, so only the terms seen
+ * for the first time create new Strings.
+ * <p>
+ * The number of distinct n-grams grows much faster than the number of words,
+ * and for a large corpus it may not fit into the heap. When the estimated
+ * memory of the counters goes beyond the given budget, their terms are sorted
+ * and written into a run file, and the counters start over empty. The final
+ * counts are then read by merging all the runs, and the counters still in
+ * memory, in the order of their terms, so a term is summed across all of them
+ * as soon as its last occurrence is read. When a length has too many runs
+ * they are merged into a single one first, so the merge never opens more
+ * than a few dozen files at once. Only the top terms are kept while
+ * the merged terms go by, so the whole vocabulary never needs to be in memory
+ * at once.
+ * <p>
+ * Counters are not thread-safe, but the counters filled by different threads
+ * can be combined with {@link #merge}, which is what the {@link #collector}
+ * does in a parallel stream. The memory budget applies to each counter. A
+ * counter must be closed after its use, so its run files are deleted.
+ *
+ * @author Bruno Toffolo
+ */
+public class NgramCounter implements Closeable {
+
+    /**
+     * Maximum number of run files of each length. When there are more, they
+     * are merged into a single run, so the final merge never needs to open more
+     * files at once.
+     */
+    private static final int MAX_RUNS = 64;
+
+    private final int maxLength;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+
+    /** Counter of the n-grams of each length, starting with the single words. */
+    private final TermCounter[] counters;
+    private final long[] totals;
+
+    /** Run files with the n-grams of each length that were spilled to disk. */
+    private final List<List<Path>> runs;
+
+    /** Last words of the current line, from the most recent one, which start the next n-grams. */
+    private final String[] previousWords;
+    private int previousCount;
+
+    private final StringBuilder word = new StringBuilder();
+    private final StringBuilder ngram = new StringBuilder();
+
+    /**
+     * Creates an empty counter.
+     *
+     * @param maxLength Maximum number of words of the counted n-grams; 1 only
+     *                  counts the words, 3 counts the words, bigrams and trigrams
+     * @param memoryBudget Number of bytes the counter may take before spilling
+     *                     its terms to disk
+     * @param spillDirectory Directory in which the run files are created, or
+     *                       null for the default temporary directory
+     */
+    public NgramCounter(int maxLength, long memoryBudget, Path spillDirectory) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("N-grams should have at least one word");
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget should be higher than zero");
+        }
+
+        this.maxLength = maxLength;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.counters = new TermCounter[maxLength];
+        this.totals = new long[maxLength];
+        this.runs = new ArrayList<>(maxLength);
+        for (int i = 0; i < maxLength; i++) {
+            counters[i] = new TermCounter();
+            runs.add(new ArrayList<>());
+        }
+        this.previousWords = new String[maxLength - 1];
+    }
+
+    /**
+     * Creates a collector that counts the n-grams of the collected lines. In a
+     * parallel stream, each thread fills its own counter, and the counters are
+     * merged at the end.
+     *
+     * @param maxLength Maximum number of words of the counted n-grams
+     * @param memoryBudget Number of bytes each counter may take before spilling
+     *                     its terms to disk
+     * @param spillDirectory Directory in which the run files are created, or
+     *                       null for the default temporary directory
+     * @return Collector of n-gram counts, which must be closed after its use
+     */
+    public static Collector<CharSequence, ?, NgramCounter> collector(int maxLength, long memoryBudget,
+                                                                     Path spillDirectory) {
+        return Collector.of(
+                () -> new NgramCounter(maxLength, memoryBudget, spillDirectory),
+                NgramCounter::accept,
+                NgramCounter::merge,
+                Collector.Characteristics.IDENTITY_FINISH,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Counts the words and n-grams of a line.
+     *
+     * @param line Line to be counted
+     * @throws UncheckedIOException If the counters went beyond the memory
+     *                              budget and could not be spilled
+     */
+    public void accept(CharSequence line) {
+        previousCount = 0;
+        WordTokenizer.forEachWord(line, word, this::countWord);
+        spillIfOverBudget();
+    }
+
+    private void countWord(StringBuilder buffer) {
+        // The stored word is kept as the start of the next n-grams, as the buffer is reused
+        String stored = counters[0].add(buffer);
+        totals[0]++;
+
+        for (int length = 2; length <= Math.min(maxLength, previousCount + 1); length++) {
+            ngram.setLength(0);
+            for (int i = length - 2; i >= 0; i--) {
+                ngram.append(previousWords[i]).append(' ');
+            }
+            ngram.append(stored);
+            counters[length - 1].add(ngram);
+            totals[length - 1]++;
+        }
+
+        if (previousWords.length > 0) {
+            System.arraycopy(previousWords, 0, previousWords, 1, previousWords.length - 1);
+            previousWords[0] = stored;
+            previousCount = Math.min(previousCount + 1, previousWords.length);
+        }
+    }
+
+    /**
+     * Adds the counts of another counter into this one. The run files of the
+     * other counter are taken over by this one.
+     *
+     * @param other Counter to be merged into this one, which must count n-grams
+     *              of the same lengths
+     * @return This counter
+     * @throws UncheckedIOException If the merged counters went beyond the
+     *                              memory budget and could not be spilled
+     */
+    public NgramCounter merge(NgramCounter other) {
+        if (other.maxLength != maxLength) {
+            throw new IllegalArgumentException("Counters of n-grams of different lengths can not be merged");
+        }
+
+        for (int i = 0; i < maxLength; i++) {
+            // The larger counter receives the smaller one, so fewer terms are copied
+            if (other.counters[i].size() > counters[i].size()) {
+                TermCounter smaller = counters[i];
+                counters[i] = other.counters[i];
+                other.counters[i] = smaller;
+            }
+            counters[i].merge(other.counters[i]);
+            other.counters[i].clear();
+            totals[i] += other.totals[i];
+            runs.get(i).addAll(other.runs.get(i));
+            other.runs.get(i).clear();
+        }
+        spillIfOverBudget();
+        compactRuns();
+        return this;
+    }
+
+    /**
+     * Gets the number of n-grams of a length counted, including the repeated
+     * ones.
+     *
+     * @param length Number of words of the n-grams
+     * @return Number of n-grams
+     */
+    public long getTotal(int length) {
+        checkLength(length);
+        return totals[length - 1];
+    }
+
+    /**
+     * Gets the number of run files into which the counters were spilled.
+     *
+     * @return Number of run files, which is zero if the counts always fit into
+     *         the memory budget
+     */
+    public int getRunCount() {
+        int count = 0;
+        for (List<Path> lengthRuns : runs) {
+            count += lengthRuns.size();
+        }
+        return count;
+    }
+
+    /**
+     * Hands every distinct n-gram of a length and its count to a consumer.
+     * When the counter was spilled to disk, the n-grams are merged from the run
+     * files and handed in alphabetical order; otherwise they are handed in no
+     * particular order.
+     *
+     * @param length Number of words of the n-grams
+     * @param consumer Consumer of the n-grams
+     * @throws IOException If the run files can not be read
+     */
+    public void forEach(int length, TermCounter.TermConsumer consumer) throws IOException {
+        checkLength(length);
+        TermCounter counter = counters[length - 1];
+        List<Path> lengthRuns = runs.get(length - 1);
+        if (lengthRuns.isEmpty()) {
+            counter.forEach(consumer);
+            return;
+        }
+
+        mergeRuns(lengthRuns, Collections.singletonList(new MemoryCursor(counter)), consumer);
+    }
+
+    /**
+     * Merges sorted runs, handing every distinct term and the sum of its counts
+     * to a consumer, in alphabetical order.
+     *
+     * @param runFiles Run files to be merged
+     * @param sources Other sources of terms to be merged along with the files
+     * @param consumer Consumer of the merged terms
+     */
+    private static void mergeRuns(List<Path> runFiles, List<RunCursor> sources,
+                                  TermCounter.TermConsumer consumer) throws IOException {
+        PriorityQueue<RunCursor> cursors = new PriorityQueue<>(Comparator.comparing(RunCursor::term));
+        try {
+            for (Path run : runFiles) {
+                addIfNotEmpty(cursors, new FileCursor(run));
+            }
+            for (RunCursor source : sources) {
+                addIfNotEmpty(cursors, source);
+            }
+
+            while (!cursors.isEmpty()) {
+                RunCursor first = cursors.poll();
+                String term = first.term();
+                long count = first.count();
+                addIfNotEmpty(cursors, first);
+                while (!cursors.isEmpty() && cursors.peek().term().equals(term)) {
+                    RunCursor next = cursors.poll();
+                    count += next.count();
+                    addIfNotEmpty(cursors, next);
+                }
+                consumer.accept(term, count);
+            }
+        } finally {
+            for (RunCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Finds the most frequent n-grams of a length, keeping only the top ones
+     * while all of them go by.
+     *
+     * @param length Number of words of the n-grams
+     * @param k Number of n-grams to be returned
+     * @return The k most frequent n-grams, from the most frequent one; ties are
+     *         ordered alphabetically
+     * @throws IOException If the run files can not be read
+     */
+    public List<TermCount> top(int length, int k) throws IOException {
+        TopKHeap<TermCount> heap = new TopKHeap<>(k, TermCount.BY_COUNT);
+        forEach(length, (term, count) -> heap.offer(new TermCount(term, count)));
+        return heap.toSortedList();
+    }
+
+    /**
+     * Counts the distinct n-grams of a length.
+     *
+     * @param length Number of words of the n-grams
+     * @return Number of distinct n-grams
+     * @throws IOException If the run files can not be read
+     */
+    public long countDistinct(int length) throws IOException {
+        checkLength(length);
+        if (runs.get(length - 1).isEmpty()) {
+            return counters[length - 1].size();
+        }
+
+        long[] distinct = new long[1];
+        forEach(length, (term, count) -> distinct[0]++);
+        return distinct[0];
+    }
+
+    /**
+     * Deletes the run files of the counter.
+     *
+     * @throws IOException If a run file can not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        for (List<Path> lengthRuns : runs) {
+            for (Path run : lengthRuns) {
+                Files.deleteIfExists(run);
+            }
+            lengthRuns.clear();
+        }
+    }
+
+    private void checkLength(int length) {
+        if (length <= 0 || length > maxLength) {
+            throw new IllegalArgumentException("Only n-grams from 1 to " + maxLength + " words are counted");
+        }
+    }
+
+    private void spillIfOverBudget() {
+        long bytes = 0;
+        for (TermCounter counter : counters) {
+            bytes += counter.estimatedBytes();
+        }
+        if (bytes <= memoryBudget) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < maxLength; i++) {
+                if (counters[i].size() > 0) {
+                    runs.get(i).add(writeRun(counters[i]));
+                    counters[i].clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compactRuns();
+    }
+
+    /**
+     * Merges the runs of every length that has too many of them into a single
+     * run file.
+     */
+    private void compactRuns() {
+        try {
+            for (List<Path> lengthRuns : runs) {
+                if (lengthRuns.size() < MAX_RUNS) {
+                    continue;
+                }
+
+                Path merged = createRun();
+                try (RunWriter writer = new RunWriter(merged)) {
+                    mergeRuns(lengthRuns, Collections.emptyList(), writer::write);
+                } catch (IOException | UncheckedIOException e) {
+                    Files.deleteIfExists(merged);
+                    throw e;
+                }
+                for (Path run : lengthRuns) {
+                    Files.delete(run);
+                }
+                lengthRuns.clear();
+                lengthRuns.add(merged);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the terms of a counter into a new run file, sorted alphabetically,
+     * each one as the length of its UTF-8 bytes, the bytes and its count.
+     */
+    private Path writeRun(TermCounter counter) throws IOException {
+        Path run = createRun();
+        try (RunWriter writer = new RunWriter(run)) {
+            for (String term : counter.sortedTerms()) {
+                writer.write(term, counter.getCount(term));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(run);
+            throw e;
+        }
+        return run;
+    }
+
+    private Path createRun() throws IOException {
+        return spillDirectory != null
+                ? Files.createTempFile(spillDirectory, "ngrams-", ".run")
+                : Files.createTempFile("ngrams-", ".run");
+    }
+
+    private static void addIfNotEmpty(PriorityQueue<RunCursor> cursors, RunCursor cursor) throws IOException {
+        if (cursor.next()) {
+            cursors.add(cursor);
+        } else {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Writes sorted terms into a run file.
+     */
+    private static final class RunWriter implements Closeable {
+
+        private final DataOutputStream output;
+
+        RunWriter(Path run) throws IOException {
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)));
+        }
+
+        void write(String term, long count) {
+            try {
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                output.writeLong(count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the terms of a sorted run, one at a time.
+     */
+    private interface RunCursor extends Closeable {
+
+        /**
+         * Moves to the next term of the run.
+         *
+         * @return Whether there was another term
+         */
+        boolean next() throws IOException;
+
+        String term();
+
+        long count();
+    }
+
+    /**
+     * Reads the terms of a run file.
+     */
+    private static final class FileCursor implements RunCursor {
+
+        private final DataInputStream input;
+        private String term;
+        private long count;
+
+        FileCursor(Path run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            int length;
+            try {
+                length = input.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            term = new String(bytes, StandardCharsets.UTF_8);
+            count = input.readLong();
+            return true;
+        }
+
+        @Override
+        public String term() {
+            return term;
+        }
+
+        @Override
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads the terms still in memory, in the same order as a run file.
+     */
+    private static final class MemoryCursor implements RunCursor {
+
+        private final TermCounter counter;
+        private final String[] terms;
+        private int index = -1;
+
+        MemoryCursor(TermCounter counter) {
+            this.counter = counter;
+            this.terms = counter.sortedTerms();
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < terms.length;
+        }
+
+        @Override
+        public String term() {
+            return terms[index];
+        }
+
+        @Override
+        public long count() {
+            return counter.getCount(terms[index]);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
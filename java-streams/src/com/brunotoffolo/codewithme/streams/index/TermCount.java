@@ -0,0 +1,75 @@
+package com.brunotoffolo.codewithme.streams.index;
+
+import java.util.Comparator;
+
+/**
+ * A term of a corpus, such as a word or a sequence of words, along with the
+ * number of times it appears.
+ *
+ * @author Bruno Toffolo
+ */
+public final class TermCount {
+
+    /**
+     * Orders the terms by their counts and, for equal counts, by their text in
+     * reverse, so the greatest terms are the most frequent ones and ties are
+     * won by the term that comes first alphabetically.
+     */
+    public static final Comparator<TermCount> BY_COUNT = Comparator.comparingLong(TermCount::getCount)
+            .thenComparing(TermCount::getTerm, Comparator.reverseOrder());
+
+    private final String term;
+    private final long count;
+
+    /**
+     * Creates a new term count.
+     *
+     * @param term Text of the term
+     * @param count Number of times the term appears
+     */
+    public TermCount(String term, long count) {
+        this.term = term;
+        this.count = count;
+    }
+
+    /**
+     * Gets the text of the term.
+     *
+     * @return Text of the term; words of a sequence are separated by spaces
+     */
+    public String getTerm() {
+        return term;
+    }
+
+    /**
+     * Gets the number of times the term appears.
+     *
+     * @return Number of occurrences
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TermCount)) {
+            return false;
+        }
+        TermCount other = (TermCount) o;
+        return count == other.count && term.equals(other.term);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * term.hashCode() + Long.hashCode(count);
+    }
+
+    @Override
+    public String toString() {
+        return term + "=" + count;
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import com.brunotoffolo.codewithme.streams.model.ExamResultTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes exam results into a binary file that can later be memory-mapped by
+ * {@link MappedExamResults}.
+ * <p>
+ * The exam results are appended one by one through a small buffer, so files
+ * with far more exam results than would fit into the heap can be generated.
+ * They are written into a temporary file next to the final one, and the number
+ * of exam results is only written into its header when the writer is
+ * committed, which then moves the file into place. A writer that is closed
+ * without being committed, for example because generating the exam results
+ * failed, deletes the temporary file and leaves any existing file untouched.
+ * The layout of the file is described in {@link MappedExamResults}.
+ *
+ * @author Bruno Toffolo
+ */
+public class ExamResultFileWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private final Path temporary;
+    private final long seed;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long count;
+    private boolean committed;
+
+    /**
+     * Prepares a new file to receive exam results. The file only replaces any
+     * existing one when the writer is committed.
+     *
+     * @param path Path of the file
+     * @param seed Seed from which the exam results were generated, stored in the
+     *             header so that readers can tell which exam results the file holds
+     * @throws IOException If the temporary file can not be created
+     */
+    public ExamResultFileWriter(Path path, long seed) throws IOException {
+        this.path = path;
+        this.seed = seed;
+        this.temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        this.channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE - BUFFER_SIZE % MappedExamResults.RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        // The header is written again with the right count when the writer is committed
+        writeHeader();
+    }
+
+    /**
+     * Appends an exam result to the file.
+     *
+     * @param id Student ID
+     * @param grade Obtained grade
+     * @throws IOException If the exam result can not be written
+     */
+    public void append(int id, double grade) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.putInt(id);
+        buffer.putDouble(grade);
+        count++;
+    }
+
+    /**
+     * Appends all the exam results of a table to the file, in the same order.
+     *
+     * @param table Table of exam results
+     * @throws IOException If the exam results can not be written
+     */
+    public void appendAll(ExamResultTable table) throws IOException {
+        for (int i = 0; i < table.size(); i++) {
+            append(table.getId(i), table.getGrade(i));
+        }
+    }
+
+    /**
+     * Writes the pending exam results and the final header, closes the file and
+     * moves it into place, replacing any existing file.
+     *
+     * @throws IOException If the file can not be written
+     */
+    public void commit() throws IOException {
+        try {
+            flush();
+            writeHeader();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    /**
+     * Closes the file, discarding the exam results written so far if the writer
+     * was not committed.
+     *
+     * @throws IOException If the temporary file can not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MappedExamResults.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MappedExamResults.MAGIC);
+        header.putInt(MappedExamResults.VERSION);
+        header.putLong(count);
+        header.putLong(seed);
+        header.flip();
+
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        if (channel.position() < MappedExamResults.HEADER_SIZE) {
+            channel.position(MappedExamResults.HEADER_SIZE);
+        }
+    }
+
+}
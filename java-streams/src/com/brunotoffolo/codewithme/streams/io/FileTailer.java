@@ -0,0 +1,202 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads the lines appended to a UTF-8 text file that keeps growing, such as a
+ * log file, without reading again the part of the file already read.
+ * <p>
+ * The tailer remembers the offset up to which the file was read, and each call
+ * to {@link #readAppended} reads only the bytes after it through a
+ * {@link FileChannel}. Lines are split in the same way as
+ * {@link java.io.BufferedReader#readLine()} does: a line feed, a carriage
+ * return or a carriage return followed by a line feed terminate the line. A
+ * line is only handed to the listener once its terminator was appended, as the
+ * last line of a growing file may still be incomplete, so its bytes are kept
+ * until the rest of the line arrives.
+ * <p>
+ * If the file becomes shorter than the offset already read, or is replaced by
+ * another file with the same name, as done when logs are rotated, the tailer
+ * starts over from the beginning of the file and tells the listener so.
+ * <p>
+ * A tailer is not thread-safe and should be used by a single thread.
+ *
+ * @author Bruno Toffolo
+ */
+public class FileTailer implements Closeable {
+
+    /** Number of bytes read from the file at once. */
+    private static final int READ_SIZE = 64 * 1024;
+
+    /**
+     * Receives the lines read by a tailer.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the file was truncated or replaced, before the lines read
+         * from its beginning again are handed to the listener.
+         */
+        void restarted();
+
+        /**
+         * Called for each complete line appended to the file.
+         *
+         * @param line Line without its terminator
+         */
+        void line(String line);
+    }
+
+    private final Path path;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long offset;
+
+    /** Bytes of the line that was not terminated yet. */
+    private byte[] partialLine = new byte[256];
+    private int partialLength;
+
+    /** Whether the last byte read was a carriage return, so a line feed right after it is skipped. */
+    private boolean afterCarriageReturn;
+
+    /**
+     * Creates a tailer that reads the file from its beginning.
+     *
+     * @param path Path of the file, which does not need to exist yet
+     */
+    public FileTailer(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Gets the offset up to which the file was read.
+     *
+     * @return Number of bytes read from the current file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Reads the bytes appended to the file since the last call and hands every
+     * line they complete to the listener, in order. Does nothing if the file
+     * does not exist.
+     *
+     * @param listener Listener of the lines
+     * @return Number of lines handed to the listener
+     * @throws IOException If the file can not be read
+     */
+    public int readAppended(Listener listener) throws IOException {
+        if (!reopenIfReplaced(listener)) {
+            return 0;
+        }
+
+        int lines = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return lines;
+            }
+            offset += read;
+
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if (b == '\n' && afterCarriageReturn) {
+                    // Second byte of a CRLF terminator, whose line was already handed
+                    afterCarriageReturn = false;
+                    lineStart = i + 1;
+                    continue;
+                }
+                afterCarriageReturn = b == '\r';
+                if (b != '\n' && b != '\r') {
+                    continue;
+                }
+
+                listener.line(decodeLine(bytes, lineStart, i));
+                lines++;
+                lineStart = i + 1;
+            }
+            appendPartial(bytes, lineStart, read);
+        }
+    }
+
+    /**
+     * Opens the file if it was not opened yet, and opens it again from its
+     * beginning if it was truncated or replaced.
+     *
+     * @return Whether the file exists
+     */
+    private boolean reopenIfReplaced(Listener listener) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        boolean replaced = channel != null && (attributes.size() < offset
+                || attributes.fileKey() != null && !Objects.equals(attributes.fileKey(), fileKey));
+        if (channel != null && !replaced) {
+            return true;
+        }
+
+        if (channel != null) {
+            channel.close();
+            offset = 0;
+            partialLength = 0;
+            afterCarriageReturn = false;
+            listener.restarted();
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = attributes.fileKey();
+        return true;
+    }
+
+    /**
+     * Decodes a line whose beginning may have been read by a previous call.
+     */
+    private String decodeLine(byte[] bytes, int from, int to) {
+        if (partialLength == 0) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        appendPartial(bytes, from, to);
+        String line = new String(partialLine, 0, partialLength, StandardCharsets.UTF_8);
+        partialLength = 0;
+        return line;
+    }
+
+    private void appendPartial(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLength + length, 2 * partialLine.length));
+        }
+        System.arraycopy(bytes, from, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+}
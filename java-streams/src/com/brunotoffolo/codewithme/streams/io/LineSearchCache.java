@@ -0,0 +1,483 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the lines found by searches over text files, so the same search over
+ * a file that did not change is not performed again.
+ * <p>
+ * Results are kept per file and query. Along with each result, the cache
+ * keeps the fingerprint of the file it was computed from: its size, its last
+ * modification time and, where the file system provides one, the key that
+ * identifies the file itself, such as its inode. Every lookup reads the
+ * attributes of the file again, and a result whose fingerprint no longer
+ * matches is discarded and computed again, so a file that was changed,
+ * truncated or replaced never gets the results of its previous contents.
+ * Reading the attributes takes a single system call, no matter how large the
+ * file is.
+ * <p>
+ * The results are kept in memory up to a number of bytes, estimated from the
+ * lengths of their lines, and the least recently used ones are evicted when
+ * the cache goes beyond it. Optionally, every result is also written into a
+ * directory, which keeps the results evicted from memory and the results of
+ * previous runs of the application. Results read from the directory go back
+ * into memory.
+ * <p>
+ * The cache counts its hits in memory and on disk, its misses, the results
+ * discarded because their files changed and the results evicted from memory,
+ * so its size can be tuned. It is thread-safe. Searches run outside of its
+ * lock, so a slow search does not block the lookups of other files, but two
+ * threads that miss the same result at the same time both perform the search.
+ *
+ * @author Bruno Toffolo
+ */
+public class LineSearchCache {
+
+    private static final int DISK_MAGIC = 0x4C534331;
+
+    /** Rough number of bytes taken by a result besides its lines. */
+    private static final int RESULT_OVERHEAD = 200;
+
+    /** Rough number of bytes taken by a line besides its characters. */
+    private static final int LINE_OVERHEAD = 56;
+
+    /**
+     * Searches a file for the lines wanted by a query.
+     */
+    @FunctionalInterface
+    public interface Search {
+
+        /**
+         * Performs the search.
+         *
+         * @param path Path of the file to be searched
+         * @return Lines found
+         * @throws IOException If the file can not be read
+         */
+        List<String> search(Path path) throws IOException;
+    }
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+
+    /** Results in memory, from the least to the most recently used. */
+    private final LinkedHashMap<Key, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    /**
+     * Creates a cache that only keeps results in memory.
+     *
+     * @param maxMemoryBytes Number of bytes the results may take in memory
+     */
+    public LineSearchCache(long maxMemoryBytes) {
+        this(maxMemoryBytes, null);
+    }
+
+    /**
+     * Creates a cache that keeps results in memory and in a directory.
+     *
+     * @param maxMemoryBytes Number of bytes the results may take in memory
+     * @param directory Directory in which the results are written, which is
+     *                  created if it does not exist; null to keep the results
+     *                  only in memory
+     */
+    public LineSearchCache(long maxMemoryBytes, Path directory) {
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("Memory size should not be negative");
+        }
+
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the lines found by a query over a file, performing the search only
+     * if there is no result of the same query over the current contents of the
+     * file.
+     *
+     * @param path Path of the file
+     * @param query Identifies the search; searches with the same query must find
+     *              the same lines in the same file
+     * @param search Search to be performed if there is no result yet
+     * @return Read-only list of the lines found
+     * @throws IOException If the file can not be read or the result can not be
+     *                     written into the directory
+     */
+    public List<String> search(Path path, String query, Search search) throws IOException {
+        Key key = new Key(path.toAbsolutePath().normalize(), query);
+        Fingerprint fingerprint = Fingerprint.of(key.path);
+
+        boolean invalidated = false;
+        synchronized (this) {
+            Result result = results.get(key);
+            if (result != null) {
+                if (result.fingerprint.equals(fingerprint)) {
+                    hits++;
+                    return result.lines;
+                }
+                remove(key);
+                invalidations++;
+                invalidated = true;
+            }
+        }
+
+        Result stored = directory != null ? readFromDisk(key, fingerprint, !invalidated) : null;
+        if (stored != null) {
+            synchronized (this) {
+                diskHits++;
+                put(key, stored);
+            }
+            return stored.lines;
+        }
+
+        Result computed = new Result(fingerprint, Collections.unmodifiableList(new ArrayList<>(search.search(key.path))));
+        // The file may have changed while it was searched, in which case the
+        // result is returned but not cached
+        if (!Fingerprint.of(key.path).equals(fingerprint)) {
+            synchronized (this) {
+                misses++;
+            }
+            return computed.lines;
+        }
+
+        if (directory != null) {
+            writeToDisk(key, computed);
+        }
+        synchronized (this) {
+            misses++;
+            put(key, computed);
+        }
+        return computed.lines;
+    }
+
+    /**
+     * Gets the number of lookups whose result was in memory.
+     *
+     * @return Number of memory hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups whose result was not in memory, but was read
+     * from the directory.
+     *
+     * @return Number of disk hits
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Gets the number of lookups that needed to perform the search.
+     *
+     * @return Number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of results discarded because their files changed.
+     *
+     * @return Number of invalidated results
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Gets the number of results evicted from memory to keep the cache within
+     * its size.
+     *
+     * @return Number of evicted results
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of results in memory.
+     *
+     * @return Number of results
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Gets the estimated memory taken by the results in memory.
+     *
+     * @return Approximate number of bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LineSearchCache[results=" + results.size() + ", bytes=" + memoryBytes + ", hits=" + hits +
+                ", diskHits=" + diskHits + ", misses=" + misses + ", invalidations=" + invalidations +
+                ", evictions=" + evictions + "]";
+    }
+
+    private void put(Key key, Result result) {
+        Result previous = results.put(key, result);
+        if (previous != null) {
+            memoryBytes -= previous.bytes;
+        }
+        memoryBytes += result.bytes;
+
+        // The least recently used results come first
+        Iterator<Result> iterator = results.values().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(Key key) {
+        Result removed = results.remove(key);
+        if (removed != null) {
+            memoryBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Reads the result of a query from the directory, deleting it if its file
+     * changed since it was written. A result that can not be read, because it
+     * was truncated or corrupted, is also deleted, so the search is performed
+     * again and its result replaces the damaged one.
+     *
+     * @param countInvalidation Whether a deleted result should be counted as
+     *                          invalidated, which it was not yet in memory
+     * @return Result read, or null if there is no current result
+     */
+    private Result readFromDisk(Key key, Fingerprint fingerprint, boolean countInvalidation) throws IOException {
+        Path file = diskPath(key);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long limit = Files.size(file);
+            if (input.readInt() != DISK_MAGIC) {
+                throw new IOException("Cached result " + file + " is corrupted");
+            }
+            Fingerprint stored = new Fingerprint(input.readLong(), input.readLong(), input.readUTF());
+            String path = readString(input, limit);
+            String query = readString(input, limit);
+            // Different keys may share a file name only in case of a digest collision
+            if (!path.equals(key.path.toString()) || !query.equals(key.query)) {
+                return null;
+            }
+
+            if (stored.equals(fingerprint)) {
+                int count = input.readInt();
+                if (count < 0 || count > limit) {
+                    throw new IOException("Cached result " + file + " is corrupted");
+                }
+                List<String> lines = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    lines.add(readString(input, limit));
+                }
+                return new Result(fingerprint, Collections.unmodifiableList(lines));
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // A damaged result is just a miss
+            Files.deleteIfExists(file);
+            return null;
+        }
+
+        // The file changed since the result was written
+        Files.deleteIfExists(file);
+        if (countInvalidation) {
+            synchronized (this) {
+                invalidations++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the result of a query into the directory. The result is written
+     * into a temporary file first, so a result is never read half written.
+     */
+    private void writeToDisk(Key key, Result result) throws IOException {
+        Files.createDirectories(directory);
+        Path file = diskPath(key);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(DISK_MAGIC);
+                output.writeLong(result.fingerprint.size);
+                output.writeLong(result.fingerprint.modifiedTime);
+                output.writeUTF(result.fingerprint.fileKey);
+                writeString(output, key.path.toString());
+                writeString(output, key.query);
+                output.writeInt(result.lines.size());
+                for (String line : result.lines) {
+                    writeString(output, line);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Gets the file of the directory that holds the result of a query, named
+     * after a digest of the path of the searched file and of the query.
+     */
+    private Path diskPath(Key key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(key.path.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(key.query.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder name = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return directory.resolve(name.append(".lines").toString());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}, checking that its length
+     * is not beyond the size of the file it is read from.
+     */
+    private static String readString(DataInputStream input, long limit) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("String of " + length + " bytes can not be read from a file of " + limit + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Identifies a query over a file.
+     */
+    private static final class Key {
+
+        private final Path path;
+        private final String query;
+
+        Key(Path path, String query) {
+            this.path = path;
+            this.query = Objects.requireNonNull(query);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + query.hashCode();
+        }
+    }
+
+    /**
+     * Attributes of a file that change whenever its contents do.
+     */
+    private static final class Fingerprint {
+
+        private final long size;
+        private final long modifiedTime;
+        private final String fileKey;
+
+        Fingerprint(long size, long modifiedTime, String fileKey) {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.fileKey = fileKey;
+        }
+
+        static Fingerprint of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            // The time is taken in nanoseconds, where the file system keeps them
+            return new Fingerprint(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    String.valueOf(attributes.fileKey()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) o;
+            return size == other.size && modifiedTime == other.modifiedTime && fileKey.equals(other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) ^ Long.hashCode(modifiedTime);
+        }
+    }
+
+    /**
+     * Lines found by a query, along with the fingerprint of the file they were
+     * found in.
+     */
+    private static final class Result {
+
+        private final Fingerprint fingerprint;
+        private final List<String> lines;
+        private final long bytes;
+
+        Result(Fingerprint fingerprint, List<String> lines) {
+            this.fingerprint = fingerprint;
+            this.lines = lines;
+
+            long bytes = RESULT_OVERHEAD;
+            for (String line : lines) {
+                bytes += LINE_OVERHEAD + 2L * line.length();
+            }
+            this.bytes = bytes;
+        }
+    }
+
+}
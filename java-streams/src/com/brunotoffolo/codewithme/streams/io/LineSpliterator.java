@@ -0,0 +1,263 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator over the lines of a byte range of a UTF-8 text file.
+ * <p>
+ * Differently from {@link java.nio.file.Files#lines(Path)}, which reads the file
+ * sequentially and only lets a parallel stream split the lines it has already
+ * buffered, this spliterator splits the file itself: each split cuts its byte
+ * range in half and snaps the cut to the start of the next line. Every part
+ * then reads and decodes its own range through positional reads of a shared
+ * {@link FileChannel}, so the I/O and the decoding also run in parallel.
+ * <p>
+ * A spliterator owns the lines that start inside its range. Lines are split in
+ * the same way as {@link java.io.BufferedReader#readLine()} does, so streaming
+ * a whole file produces the same lines as {@link java.nio.file.Files#readAllLines(Path)}.
+ * The size estimate is given in bytes rather than in lines, which is enough for
+ * a parallel stream to balance the work between its threads.
+ *
+ * @author Bruno Toffolo
+ */
+public class LineSpliterator implements Spliterator<String> {
+
+    /** Ranges smaller than this number of bytes are not split any further. */
+    private static final int MIN_SPLIT_SIZE = 8 * 1024;
+
+    /** Number of bytes read from the file at once. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+
+    private byte[] buffer;
+    private int bufferStart;
+    private int bufferEnd;
+
+    /**
+     * Creates a spliterator over the lines that start in the given byte range.
+     *
+     * @param channel Channel of the file, which must remain open while the
+     *                spliterator is in use
+     * @param start Offset of the first byte of the range, which must be the
+     *              start of a line
+     * @param end Offset right after the last byte of the range, which must be
+     *            the start of a line or the end of the file
+     */
+    public LineSpliterator(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Opens a stream over all the lines of the given file. The stream must be
+     * closed after its use so the underlying file is also closed.
+     *
+     * @param path Path of the file
+     * @param parallel Whether the stream should be parallel
+     * @return Stream of lines of the file
+     * @throws IOException If the file can not be opened
+     */
+    public static Stream<String> lines(Path path, boolean parallel) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return StreamSupport.stream(new LineSpliterator(channel, 0, channel.size()), parallel)
+                    .onClose(() -> {
+                        try {
+                            channel.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (position >= end) {
+            return false;
+        }
+        action.accept(nextLine());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super String> action) {
+        while (position < end) {
+            action.accept(nextLine());
+        }
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        long remaining = end - position;
+        if (remaining < MIN_SPLIT_SIZE) {
+            return null;
+        }
+
+        long middle = nextLineStart(position + remaining / 2);
+        if (middle >= end) {
+            return null;
+        }
+
+        // The prefix is handed to the new spliterator, so the encounter order is
+        // preserved. Any buffered bytes belong to the prefix and are discarded.
+        LineSpliterator prefix = new LineSpliterator(channel, position, middle);
+        position = middle;
+        bufferStart = 0;
+        bufferEnd = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Reads the line that starts at the current position and moves the position
+     * to the start of the following line.
+     *
+     * @return Decoded line, without its terminator
+     */
+    private String nextLine() {
+        int lineStart = bufferStart;
+        int scan = lineStart;
+        while (true) {
+            if (scan == bufferEnd) {
+                int consumed = lineStart;
+                if (!fill()) {
+                    // End of the file without a line terminator
+                    String line = decode(lineStart - consumed, bufferEnd);
+                    position = end;
+                    return line;
+                }
+                lineStart -= consumed;
+                scan -= consumed;
+                continue;
+            }
+
+            byte b = buffer[scan];
+            if (b == '\n' || b == '\r') {
+                String line = decode(lineStart, scan);
+                int terminator = 1;
+                if (b == '\r') {
+                    if (scan + 1 == bufferEnd) {
+                        int consumed = lineStart;
+                        fill();
+                        lineStart -= consumed;
+                        scan -= consumed;
+                    }
+                    if (scan + 1 < bufferEnd && buffer[scan + 1] == '\n') {
+                        terminator = 2;
+                    }
+                }
+                position += (scan - lineStart) + terminator;
+                bufferStart = scan + terminator;
+                return line;
+            }
+            scan++;
+        }
+    }
+
+    private String decode(int from, int to) {
+        return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Discards the bytes before the current buffer start and reads more bytes
+     * from the file after the ones already buffered. The buffer grows when a
+     * single line does not fit into it.
+     *
+     * @return true if any byte was read; false at the end of the file
+     */
+    private boolean fill() {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+
+        int pending = bufferEnd - bufferStart;
+        if (bufferStart > 0) {
+            System.arraycopy(buffer, bufferStart, buffer, 0, pending);
+        } else if (pending == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        bufferStart = 0;
+        bufferEnd = pending;
+
+        int read = read(ByteBuffer.wrap(buffer, pending, buffer.length - pending), position + pending);
+        if (read <= 0) {
+            return false;
+        }
+        bufferEnd += read;
+        return true;
+    }
+
+    /**
+     * Finds the start of the first line that begins after the given offset.
+     *
+     * @param offset Offset from which the search starts
+     * @return Offset of the start of the line; the end of the range if none
+     */
+    private long nextLineStart(long offset) {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long probeStart = offset;
+        while (probeStart < end) {
+            probe.clear();
+            int read = read(probe, probeStart);
+            if (read <= 0) {
+                return end;
+            }
+
+            for (int i = 0; i < read; i++) {
+                byte b = probe.get(i);
+                if (b == '\n') {
+                    return probeStart + i + 1;
+                }
+                if (b == '\r') {
+                    // A carriage return may be followed by a line feed that belongs
+                    // to the same terminator
+                    long next = probeStart + i + 1;
+                    ByteBuffer following = ByteBuffer.allocate(1);
+                    if (next < end && read(following, next) == 1 && following.get(0) == '\n') {
+                        return next + 1;
+                    }
+                    return next;
+                }
+            }
+            probeStart += read;
+        }
+        return end;
+    }
+
+    private int read(ByteBuffer target, long offset) {
+        try {
+            return channel.read(target, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
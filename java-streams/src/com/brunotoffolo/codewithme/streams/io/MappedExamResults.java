@@ -0,0 +1,197 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import com.brunotoffolo.codewithme.streams.util.DoubleIntTopKHeap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalDouble;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only set of exam results memory-mapped from a binary file generated by
+ * the {@link ExamResultFileWriter}.
+ * <p>
+ * The exam results are never loaded into the heap: every query reads them
+ * straight from the mapped file, so the set can hold billions of them. As a
+ * single mapping is limited to 2 GB, the file is mapped in segments, and the
+ * queries process the segments in parallel. The file has a fixed-width layout,
+ * with all numbers in little-endian order:
+ * <pre>
+ * header    magic (int), version (int), number of exam results (long), seed (long)
+ * records   student ID (int) and grade (double) of every exam result
+ * </pre>
+ *
+ * @author Bruno Toffolo
+ */
+public class MappedExamResults {
+
+    static final int MAGIC = 0x43574552;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 12;
+
+    /** Number of exam results in each mapped segment of the file. */
+    private static final int RECORDS_PER_SEGMENT = 1 << 24;
+
+    private final ByteBuffer[] segments;
+    private final long size;
+    private final long seed;
+
+    private MappedExamResults(ByteBuffer[] segments, long size, long seed) {
+        this.segments = segments;
+        this.size = size;
+        this.seed = seed;
+    }
+
+    /**
+     * Maps a file of exam results into memory.
+     *
+     * @param path Path of the file
+     * @return Mapped exam results
+     * @throws IOException If the file can not be read or is not a valid exam result file
+     */
+    public static MappedExamResults open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Keeps reading until the whole header is available
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("File is not an exam result file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported exam result file version " + header.getInt(4));
+            }
+
+            long size = header.getLong(8);
+            if (size < 0 || channel.size() < HEADER_SIZE + size * RECORD_SIZE) {
+                throw new IOException("Exam result file is truncated");
+            }
+
+            int segmentCount = (int) ((size + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+            ByteBuffer[] segments = new ByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i * RECORDS_PER_SEGMENT;
+                long records = Math.min(RECORDS_PER_SEGMENT, size - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE,
+                        records * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedExamResults(segments, size, header.getLong(16));
+        }
+    }
+
+    /**
+     * Gets the number of exam results.
+     *
+     * @return Number of exam results
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets the seed from which the exam results were generated.
+     *
+     * @return Seed stored in the file
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the student ID of an exam result.
+     *
+     * @param index Position of the exam result
+     * @return Student ID
+     */
+    public int getId(long index) {
+        checkIndex(index);
+        return segments[(int) (index / RECORDS_PER_SEGMENT)]
+                .getInt((int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE);
+    }
+
+    /**
+     * Gets the grade of an exam result.
+     *
+     * @param index Position of the exam result
+     * @return Obtained grade
+     */
+    public double getGrade(long index) {
+        checkIndex(index);
+        return segments[(int) (index / RECORDS_PER_SEGMENT)]
+                .getDouble((int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE + 4);
+    }
+
+    /**
+     * Checks if any student got a grade higher than the given one.
+     *
+     * @param grade Grade to be compared
+     * @return true if there is a higher grade; false otherwise
+     */
+    public boolean anyGradeHigherThan(double grade) {
+        return segmentIndexes().anyMatch(s -> {
+            ByteBuffer segment = segments[s];
+            for (int offset = 4; offset < segment.limit(); offset += RECORD_SIZE) {
+                if (segment.getDouble(offset) > grade) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Gets the average grade of all the exam results.
+     *
+     * @return Average grade; empty if there are no exam results
+     */
+    public OptionalDouble averageGrade() {
+        if (size == 0) {
+            return OptionalDouble.empty();
+        }
+
+        double sum = segmentIndexes().mapToDouble(s -> {
+            ByteBuffer segment = segments[s];
+            double segmentSum = 0;
+            for (int offset = 4; offset < segment.limit(); offset += RECORD_SIZE) {
+                segmentSum += segment.getDouble(offset);
+            }
+            return segmentSum;
+        }).sum();
+        return OptionalDouble.of(sum / size);
+    }
+
+    /**
+     * Gets the IDs of the students who got the k highest grades.
+     *
+     * @param k Number of students
+     * @return Student IDs, from the highest grade to the lowest
+     */
+    public int[] topIds(int k) {
+        return segmentIndexes().collect(
+                () -> new DoubleIntTopKHeap(k),
+                (top, s) -> {
+                    ByteBuffer segment = segments[s];
+                    for (int offset = 0; offset < segment.limit(); offset += RECORD_SIZE) {
+                        top.offer(segment.getDouble(offset + 4), segment.getInt(offset));
+                    }
+                },
+                DoubleIntTopKHeap::merge)
+                .values();
+    }
+
+    private IntStream segmentIndexes() {
+        return IntStream.range(0, segments.length).parallel();
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of the file bounds");
+        }
+    }
+
+}
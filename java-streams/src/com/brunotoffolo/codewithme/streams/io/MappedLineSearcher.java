@@ -0,0 +1,170 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Searches a UTF-8 text file for the lines that contain a given word without
+ * loading the whole file into the heap.
+ * <p>
+ * The file is memory-mapped through {@link FileChannel#map} one region at a
+ * time and scanned directly over its raw bytes. As the word is also encoded in
+ * UTF-8, a byte-level match is equivalent to a match over the decoded text, so
+ * only the lines that actually contain the word are ever converted into
+ * Strings. The heap usage is therefore constant regardless of the file size,
+ * except for the matching lines returned to the caller.
+ * <p>
+ * Lines are split in the same way as {@link java.io.BufferedReader#readLine()}
+ * does: a line feed, a carriage return or a carriage return followed by a line
+ * feed terminate the line.
+ *
+ * @author Bruno Toffolo
+ */
+public class MappedLineSearcher {
+
+    /** Default size of each region of the file that is mapped at once. */
+    private static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final Path path;
+    private final byte[] pattern;
+    private final int regionSize;
+
+    /**
+     * Creates a new searcher for the given file and word, using the default
+     * region size.
+     *
+     * @param path Path of the file to be searched
+     * @param word Word that must be contained in the lines
+     */
+    public MappedLineSearcher(Path path, String word) {
+        this(path, word, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Creates a new searcher for the given file and word.
+     *
+     * @param path Path of the file to be searched
+     * @param word Word that must be contained in the lines
+     * @param regionSize Maximum number of bytes mapped at once. No line of the
+     *                   file may be longer than this value.
+     */
+    public MappedLineSearcher(Path path, String word, int regionSize) {
+        if (word.isEmpty() || word.indexOf('\n') >= 0 || word.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Searched word should not be empty nor contain line terminators");
+        }
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Region size should be higher than zero");
+        }
+
+        this.path = path;
+        this.pattern = word.getBytes(StandardCharsets.UTF_8);
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Searches the file and collects all the lines that contain the word.
+     *
+     * @return List of matching lines, in the order they appear in the file
+     * @throws IOException If the file can not be read
+     */
+    public List<String> search() throws IOException {
+        List<String> matches = new ArrayList<>();
+        forEachMatch(matches::add);
+        return matches;
+    }
+
+    /**
+     * Searches the file and hands every line that contains the word to the given
+     * action, in the order they appear in the file.
+     *
+     * @param action Action to be performed for each matching line
+     * @throws IOException If the file can not be read
+     */
+    public void forEachMatch(Consumer<String> action) throws IOException {
+        byte[] lineBytes = new byte[256];
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long regionStart = 0;
+
+            while (regionStart < size) {
+                int length = (int) Math.min(regionSize, size - regionStart);
+                boolean lastRegion = regionStart + length == size;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+
+                int lineStart = 0;
+                for (int i = 0; i <= length; i++) {
+                    // The end of the last region also terminates a line, even
+                    // if the file does not end with a line terminator
+                    boolean endOfLine = (i == length) ? lastRegion : isLineTerminator(region.get(i));
+                    if (!endOfLine) {
+                        continue;
+                    }
+
+                    if (contains(region, lineStart, i)) {
+                        int lineLength = i - lineStart;
+                        if (lineBytes.length < lineLength) {
+                            lineBytes = new byte[Math.max(lineLength, lineBytes.length * 2)];
+                        }
+                        for (int j = 0; j < lineLength; j++) {
+                            lineBytes[j] = region.get(lineStart + j);
+                        }
+                        action.accept(new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8));
+                    }
+                    lineStart = i + 1;
+                }
+
+                if (lastRegion) {
+                    break;
+                }
+                if (lineStart == 0) {
+                    throw new IOException("Line starting at offset " + regionStart +
+                            " is longer than the mapped region size of " + regionSize + " bytes");
+                }
+
+                // The next region starts at the beginning of the line that was
+                // cut at the end of this one, so it can be scanned as a whole
+                regionStart += lineStart;
+            }
+        }
+    }
+
+    /**
+     * Checks if the given byte range of the region contains the searched word.
+     *
+     * @param region Mapped region of the file
+     * @param from Index of the first byte of the range (inclusive)
+     * @param to Index of the last byte of the range (exclusive)
+     * @return true if the word was found; false otherwise
+     */
+    private boolean contains(MappedByteBuffer region, int from, int to) {
+        byte first = pattern[0];
+        int last = to - pattern.length;
+
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (region.get(i) != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (region.get(i + j) != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isLineTerminator(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+}
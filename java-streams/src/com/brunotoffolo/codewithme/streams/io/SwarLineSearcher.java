@@ -0,0 +1,283 @@
+package com.brunotoffolo.codewithme.streams.io;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Searches a UTF-8 text file for the lines that contain a given word, looking
+ * at eight bytes at a time instead of one.
+ * <p>
+ * Just like {@link MappedLineSearcher}, the file is memory-mapped one region
+ * at a time and only the lines that contain the word are decoded. The
+ * difference is in how the bytes are scanned. {@link MappedLineSearcher}
+ * looks at every byte to split the file into lines and then looks for the
+ * word in each line, while this searcher looks for the word in the whole
+ * region first and only looks for the ends of a line around each occurrence.
+ * As the word can not contain line terminators, an occurrence never spans two
+ * lines, and the lines without the word are skipped without ever finding out
+ * where they start or end.
+ * <p>
+ * The region is read as {@code long}s, and the bytes of each {@code long} are
+ * compared with a byte of the word all at once with a few arithmetic and
+ * bitwise operations, a technique known as SIMD within a register (SWAR).
+ * Two bytes of the word are compared at their distance in the word, so a
+ * candidate position must have both of them before the rest of the word is
+ * compared. The bytes are chosen away from the ends of the word when it
+ * starts or ends with spaces, as spaces are the most frequent bytes of a text
+ * and would make almost every word a candidate. The ends of the lines are
+ * found in the same way, eight bytes at a time.
+ * <p>
+ * Lines are split in the same way as {@link java.io.BufferedReader#readLine()}
+ * does: a line feed, a carriage return or a carriage return followed by a line
+ * feed terminate the line.
+ *
+ * @author Bruno Toffolo
+ */
+public class SwarLineSearcher {
+
+    /** Default size of each region of the file that is mapped at once. */
+    private static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final long LINE_FEEDS = ONES * '\n';
+    private static final long CARRIAGE_RETURNS = ONES * '\r';
+
+    private final Path path;
+    private final byte[] pattern;
+    private final int regionSize;
+
+    /** Positions in the word of the two bytes compared to find the candidates. */
+    private final int firstAnchor;
+    private final int secondAnchor;
+
+    /** Anchor bytes repeated in every byte of a {@code long}. */
+    private final long firstAnchorBytes;
+    private final long secondAnchorBytes;
+
+    /**
+     * Creates a new searcher for the given file and word, using the default
+     * region size.
+     *
+     * @param path Path of the file to be searched
+     * @param word Word that must be contained in the lines
+     */
+    public SwarLineSearcher(Path path, String word) {
+        this(path, word, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Creates a new searcher for the given file and word.
+     *
+     * @param path Path of the file to be searched
+     * @param word Word that must be contained in the lines
+     * @param regionSize Maximum number of bytes mapped at once. No line of the
+     *                   file may be longer than this value.
+     */
+    public SwarLineSearcher(Path path, String word, int regionSize) {
+        if (word.isEmpty() || word.indexOf('\n') >= 0 || word.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Searched word should not be empty nor contain line terminators");
+        }
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Region size should be higher than zero");
+        }
+
+        this.path = path;
+        this.pattern = word.getBytes(StandardCharsets.UTF_8);
+        this.regionSize = regionSize;
+
+        int first = 0;
+        int second = pattern.length - 1;
+        while (first < second && pattern[first] == ' ') {
+            first++;
+        }
+        while (second > first && pattern[second] == ' ') {
+            second--;
+        }
+        this.firstAnchor = first;
+        this.secondAnchor = second;
+        this.firstAnchorBytes = ONES * (pattern[first] & 0xFF);
+        this.secondAnchorBytes = ONES * (pattern[second] & 0xFF);
+    }
+
+    /**
+     * Searches the file and collects all the lines that contain the word.
+     *
+     * @return List of matching lines, in the order they appear in the file
+     * @throws IOException If the file can not be read
+     */
+    public List<String> search() throws IOException {
+        List<String> matches = new ArrayList<>();
+        forEachMatch(matches::add);
+        return matches;
+    }
+
+    /**
+     * Searches the file and hands every line that contains the word to the given
+     * action, in the order they appear in the file.
+     *
+     * @param action Action to be performed for each matching line
+     * @throws IOException If the file can not be read
+     */
+    public void forEachMatch(Consumer<String> action) throws IOException {
+        byte[] lineBytes = new byte[256];
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long regionStart = 0;
+
+            while (regionStart < size) {
+                int length = (int) Math.min(regionSize, size - regionStart);
+                boolean lastRegion = regionStart + length == size;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+                region.order(ByteOrder.LITTLE_ENDIAN);
+
+                // Only the complete lines of the region are searched, and the next
+                // region starts at the beginning of the line that was cut
+                int end = lastRegion ? length : lastLineEnd(region, length);
+                if (end == 0) {
+                    throw new IOException("Line starting at offset " + regionStart +
+                            " is longer than the mapped region size of " + regionSize + " bytes");
+                }
+
+                int from = 0;
+                int match;
+                while ((match = indexOf(region, from, end)) >= 0) {
+                    int lineStart = lineStart(region, from, match);
+                    int lineEnd = lineEnd(region, match + pattern.length, end);
+                    int lineLength = lineEnd - lineStart;
+                    if (lineBytes.length < lineLength) {
+                        lineBytes = new byte[Math.max(lineLength, lineBytes.length * 2)];
+                    }
+                    region.position(lineStart);
+                    region.get(lineBytes, 0, lineLength);
+                    action.accept(new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8));
+
+                    // Any other occurrence in the same line is skipped
+                    from = lineEnd;
+                }
+
+                regionStart += end;
+            }
+        }
+    }
+
+    /**
+     * Finds the first occurrence of the word in the given byte range.
+     *
+     * @param region Mapped region of the file
+     * @param from Index of the first byte of the range (inclusive)
+     * @param to Index of the last byte of the range (exclusive)
+     * @return Index of the first byte of the occurrence, or -1 if there is none
+     */
+    private int indexOf(MappedByteBuffer region, int from, int to) {
+        int last = to - pattern.length;
+        int i = from;
+
+        // Both anchors of every candidate in [i, i + 8) are read in two longs,
+        // as long as the second one does not go past the range
+        for (; i + secondAnchor + Long.BYTES <= to; i += Long.BYTES) {
+            long candidates = equalBytes(region.getLong(i + firstAnchor), firstAnchorBytes)
+                    & equalBytes(region.getLong(i + secondAnchor), secondAnchorBytes);
+            while (candidates != 0) {
+                int candidate = i + (Long.numberOfTrailingZeros(candidates) >>> 3);
+                if (candidate <= last && matches(region, candidate)) {
+                    return candidate;
+                }
+                candidates &= candidates - 1;
+            }
+        }
+
+        for (; i <= last; i++) {
+            if (matches(region, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(MappedByteBuffer region, int position) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (region.get(position + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the start of the line that contains the given position, looking
+     * back no further than the end of the previous match.
+     */
+    private static int lineStart(MappedByteBuffer region, int from, int position) {
+        int i = position;
+        while (i > from && !isLineTerminator(region.get(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the first line terminator at or after the given position, or the
+     * end of the range if there is none.
+     */
+    private static int lineEnd(MappedByteBuffer region, int position, int to) {
+        int i = position;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = region.getLong(i);
+            long terminators = equalBytes(word, LINE_FEEDS) | equalBytes(word, CARRIAGE_RETURNS);
+            if (terminators != 0) {
+                return i + (Long.numberOfTrailingZeros(terminators) >>> 3);
+            }
+        }
+        while (i < to && !isLineTerminator(region.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the end of the last complete line of a region, that is, the index
+     * right after its last line terminator.
+     *
+     * @return Index after the last line terminator, or 0 if there is none
+     */
+    private static int lastLineEnd(MappedByteBuffer region, int length) {
+        int i = length;
+        while (i > 0 && !isLineTerminator(region.get(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Compares every byte of a {@code long} with the same byte at once.
+     *
+     * @param word Eight bytes of the file
+     * @param repeated Byte to be compared, repeated in every byte of a {@code long}
+     * @return {@code long} with the highest bit of every equal byte set, and
+     *         every other bit clear
+     */
+    private static long equalBytes(long word, long repeated) {
+        long difference = word ^ repeated;
+        // The highest bit of each byte is set if any of its lower bits is set,
+        // or if its own highest bit is, which leaves it clear only for equal
+        // bytes; no carry crosses from one byte to the next
+        long nonZero = ((difference & LOW_BITS) + LOW_BITS) | difference;
+        return ~(nonZero | LOW_BITS);
+    }
+
+    private static boolean isLineTerminator(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+}
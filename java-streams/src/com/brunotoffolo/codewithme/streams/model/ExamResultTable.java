@@ -0,0 +1,183 @@
+package com.brunotoffolo.codewithme.streams.model;
+
+import com.brunotoffolo.codewithme.streams.util.DoubleIntTopKHeap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * Stores a set of exam results in columns, as an array of student IDs and an
+ * array of grades, instead of as a list of {@link ExamResult} objects.
+ * <p>
+ * Each exam result takes exactly 12 bytes in this table, while in a list it
+ * needs an object with its own header plus a reference to it, which adds up to
+ * about three times as much memory. As the grades are also stored next to each
+ * other, the queries that only look at the grades traverse a single primitive
+ * array, without any boxing or pointer chasing.
+ *
+ * @author Bruno Toffolo
+ */
+public class ExamResultTable {
+
+    private int[] ids;
+    private double[] grades;
+    private int size;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param capacity Number of exam results the table can hold before growing
+     */
+    public ExamResultTable(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Table capacity should not be negative");
+        }
+
+        this.ids = new int[capacity];
+        this.grades = new double[capacity];
+    }
+
+    /**
+     * Creates a table backed by the given arrays, which are not copied. Both
+     * arrays must have the same length, which becomes the size of the table.
+     *
+     * @param ids Student IDs
+     * @param grades Obtained grades
+     * @return Table with the exam results
+     */
+    public static ExamResultTable wrap(int[] ids, double[] grades) {
+        if (ids.length != grades.length) {
+            throw new IllegalArgumentException("There should be exactly one grade for each student ID");
+        }
+
+        ExamResultTable table = new ExamResultTable(0);
+        table.ids = ids;
+        table.grades = grades;
+        table.size = ids.length;
+        return table;
+    }
+
+    /**
+     * Creates a table with the same exam results of a list, in the same order.
+     *
+     * @param examResults List of exam results
+     * @return Table with the exam results
+     */
+    public static ExamResultTable of(List<ExamResult> examResults) {
+        ExamResultTable table = new ExamResultTable(examResults.size());
+        for (ExamResult result : examResults) {
+            table.add(result.getId(), result.getGrade());
+        }
+        return table;
+    }
+
+    /**
+     * Adds an exam result to the end of the table.
+     *
+     * @param id Student ID
+     * @param grade Obtained grade
+     */
+    public void add(int id, double grade) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            grades = Arrays.copyOf(grades, capacity);
+        }
+
+        ids[size] = id;
+        grades[size] = grade;
+        size++;
+    }
+
+    /**
+     * Gets the number of exam results in the table.
+     *
+     * @return Number of exam results
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the student ID of an exam result.
+     *
+     * @param index Position of the exam result
+     * @return Student ID
+     */
+    public int getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * Gets the grade of an exam result.
+     *
+     * @param index Position of the exam result
+     * @return Obtained grade
+     */
+    public double getGrade(int index) {
+        checkIndex(index);
+        return grades[index];
+    }
+
+    /**
+     * Gets a stream over the student IDs of all the exam results.
+     *
+     * @return Stream of student IDs
+     */
+    public IntStream ids() {
+        return Arrays.stream(ids, 0, size);
+    }
+
+    /**
+     * Gets a stream over the grades of all the exam results.
+     *
+     * @return Stream of grades
+     */
+    public DoubleStream grades() {
+        return Arrays.stream(grades, 0, size);
+    }
+
+    /**
+     * Checks if any student got a grade higher than the given one.
+     *
+     * @param grade Grade to be compared
+     * @return true if there is a higher grade; false otherwise
+     */
+    public boolean anyGradeHigherThan(double grade) {
+        return grades().anyMatch(g -> g > grade);
+    }
+
+    /**
+     * Gets the average grade of all the exam results.
+     *
+     * @return Average grade; empty if the table is empty
+     */
+    public OptionalDouble averageGrade() {
+        return grades().average();
+    }
+
+    /**
+     * Gets the IDs of the students who got the k highest grades.
+     *
+     * @param k Number of students
+     * @return Student IDs, from the highest grade to the lowest
+     */
+    public int[] topIds(int k) {
+        DoubleIntTopKHeap top = new DoubleIntTopKHeap(k);
+        for (int i = 0; i < size; i++) {
+            top.offer(grades[i], ids[i]);
+        }
+        return top.values();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of the table bounds");
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Finds occurrences of many terms at once in a text, through the Aho-Corasick
+ * algorithm.
+ * <p>
+ * All the terms are compiled into a single automaton, so each line is scanned
+ * only once no matter how many terms are being searched. The automaton is kept
+ * as a fully expanded transition table indexed by state and character class,
+ * which means every character of the text costs exactly one table lookup and
+ * the throughput barely depends on the number of terms.
+ * <p>
+ * As it implements {@link Predicate}, a matcher can be used anywhere a simple
+ * {@code line -> line.contains(word)} test would be, for example as the filter
+ * of a stream. Matchers are immutable and can be shared between threads.
+ *
+ * @author Bruno Toffolo
+ */
+public class AhoCorasickMatcher implements Predicate<String> {
+
+    /** Marks a state that does not complete any term. */
+    private static final int NO_TERM = -1;
+
+    /** Greatest number of entries of the transition table, which takes a gigabyte. */
+    private static final int MAX_TABLE_SIZE = 1 << 28;
+
+    private final List<String> terms;
+
+    /** Character class of each possible char; 0 for chars not used in any term. */
+    private final int[] charClasses;
+
+    /** Number of character classes, which is the width of each table row. */
+    private final int width;
+
+    /** Transition table, where the next state is at {@code state * width + charClass}. */
+    private final int[] transitions;
+
+    /** Index of the term that ends at each state, if any. */
+    private final int[] termsAtState;
+
+    /** Next state in the failure chain that ends a term, if any. */
+    private final int[] outputLinks;
+
+    /** Whether any term ends at each state or at its failure chain. */
+    private final boolean[] accepting;
+
+    /**
+     * Creates a matcher for the given terms. The transition table has a row
+     * for each character of the terms and a column for each distinct character
+     * among them, and terms that would make it larger than 2^28 entries are
+     * rejected.
+     *
+     * @param terms Terms to be searched. Duplicated terms are only reported once.
+     */
+    public AhoCorasickMatcher(Collection<String> terms) {
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("At least one term should be provided");
+        }
+
+        this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+        this.charClasses = new int[Character.MAX_VALUE + 1];
+
+        int classes = 1;
+        int maxStates = 1;
+        for (String term : this.terms) {
+            if (term.isEmpty()) {
+                throw new IllegalArgumentException("Searched terms should not be empty");
+            }
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                if (charClasses[c] == 0) {
+                    charClasses[c] = classes++;
+                }
+            }
+            maxStates = tableSize(maxStates, term.length(), 1);
+        }
+        this.width = classes;
+
+        int[] table = new int[tableSize(0, maxStates, width)];
+        int[] termAt = new int[maxStates];
+        Arrays.fill(termAt, NO_TERM);
+
+        // Builds the trie with all the terms. As no edge ever points back to the
+        // root, a zero in the table means that the edge does not exist yet.
+        int states = 1;
+        for (int t = 0; t < this.terms.size(); t++) {
+            String term = this.terms.get(t);
+            int state = 0;
+            for (int i = 0; i < term.length(); i++) {
+                int index = state * width + charClasses[term.charAt(i)];
+                if (table[index] == 0) {
+                    table[index] = states++;
+                }
+                state = table[index];
+            }
+            if (termAt[state] == NO_TERM) {
+                termAt[state] = t;
+            }
+        }
+
+        // Computes the failure links in breadth-first order and replaces every
+        // missing edge by the transition of the failure state, turning the trie
+        // into a deterministic automaton.
+        int[] failures = new int[states];
+        int[] links = new int[states];
+        boolean[] accepts = new boolean[states];
+        links[0] = NO_TERM;
+
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < width; c++) {
+            int child = table[c];
+            if (child != 0) {
+                links[child] = NO_TERM;
+                accepts[child] = termAt[child] != NO_TERM;
+                queue.add(child);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int failure = failures[state];
+            for (int c = 0; c < width; c++) {
+                int index = state * width + c;
+                int child = table[index];
+                if (child == 0) {
+                    table[index] = table[failure * width + c];
+                    continue;
+                }
+
+                int childFailure = table[failure * width + c];
+                failures[child] = childFailure;
+                links[child] = termAt[childFailure] != NO_TERM ? childFailure : links[childFailure];
+                accepts[child] = termAt[child] != NO_TERM || links[child] != NO_TERM;
+                queue.add(child);
+            }
+        }
+
+        this.transitions = Arrays.copyOf(table, states * width);
+        this.termsAtState = Arrays.copyOf(termAt, states);
+        this.outputLinks = links;
+        this.accepting = accepts;
+    }
+
+    /**
+     * Creates a matcher for the given terms.
+     *
+     * @param terms Terms to be searched
+     * @return Matcher for the terms
+     */
+    public static AhoCorasickMatcher of(String... terms) {
+        return new AhoCorasickMatcher(Arrays.asList(terms));
+    }
+
+    /**
+     * Checks if the text contains at least one of the terms. The scan stops as
+     * soon as the first occurrence is found.
+     *
+     * @param text Text to be scanned
+     * @return true if any term was found; false otherwise
+     */
+    public boolean containsAny(CharSequence text) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * width + charClasses[text.charAt(i)]];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link #containsAny(CharSequence)}, so the matcher can be used as
+     * a stream filter.
+     *
+     * @param line Line to be tested
+     * @return true if any term was found in the line; false otherwise
+     */
+    @Override
+    public boolean test(String line) {
+        return containsAny(line);
+    }
+
+    /**
+     * Finds every occurrence of every term in the text, in a single pass. Each
+     * occurrence is handed to the given action along with the index right after
+     * its last character.
+     *
+     * @param text Text to be scanned
+     * @param action Action to be performed for each occurrence
+     */
+    public void forEachMatch(CharSequence text, ObjIntConsumer<String> action) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * width + charClasses[text.charAt(i)]];
+            if (!accepting[state]) {
+                continue;
+            }
+
+            int output = termsAtState[state] != NO_TERM ? state : outputLinks[state];
+            while (output != NO_TERM) {
+                action.accept(terms.get(termsAtState[output]), i + 1);
+                output = outputLinks[output];
+            }
+        }
+    }
+
+    /**
+     * Finds every occurrence of every term in the text, in a single pass.
+     *
+     * @param text Text to be scanned
+     * @return Found terms, in the order in which their occurrences end in the text
+     */
+    public List<String> findAll(CharSequence text) {
+        List<String> found = new ArrayList<>();
+        forEachMatch(text, (term, end) -> found.add(term));
+        return found;
+    }
+
+    /**
+     * Gets the terms searched by this matcher.
+     *
+     * @return List of terms
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    /**
+     * Computes {@code base + count * width}, the size of the transition table
+     * or of one of its parts, checking that the table stays within its limit.
+     */
+    private static int tableSize(int base, int count, int width) {
+        try {
+            int size = Math.addExact(base, Math.multiplyExact(count, width));
+            if (size <= MAX_TABLE_SIZE) {
+                return size;
+            }
+        } catch (ArithmeticException e) {
+            // Reported below, as any other size over the limit
+        }
+        throw new IllegalArgumentException("Searched terms are too many or too long: the transition table would have more than "
+                + MAX_TABLE_SIZE + " entries");
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+/**
+ * Probabilistic set of long values, which uses a fixed amount of memory no
+ * matter how many values are added to it.
+ * <p>
+ * A value that was added is always reported as present, but a value that was
+ * never added may also be reported as present, with a probability that grows
+ * with the number of values. The filter is sized for an expected number of
+ * values and a desired false positive probability. Instances are not
+ * thread-safe.
+ *
+ * @author Bruno Toffolo
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param expectedValues Expected number of values to be added
+     * @param falsePositiveProbability Desired probability of false positives
+     *                                 after the expected values are added
+     */
+    public BloomFilter(long expectedValues, double falsePositiveProbability) {
+        if (expectedValues <= 0) {
+            throw new IllegalArgumentException("Expected number of values should be higher than zero");
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("False positive probability should be between zero and one");
+        }
+
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedValues * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        long words = Math.max(1, (optimalBits + 63) >>> 6);
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Filter would be too big to be allocated");
+        }
+
+        this.bits = new long[(int) words];
+        this.bitCount = words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedValues * ln2));
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value Value to be added
+     * @return true if the value was certainly not in the filter yet; false if it
+     *         may have been added before
+     */
+    public boolean add(long value) {
+        long hash1 = mix(value);
+        long hash2 = mix(hash1) | 1;
+        boolean added = false;
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Checks if a value may have been added to the filter.
+     *
+     * @param value Value to be checked
+     * @return false if the value was certainly never added; true otherwise
+     */
+    public boolean mightContain(long value) {
+        long hash1 = mix(value);
+        long hash2 = mix(hash1) | 1;
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the size of the filter.
+     *
+     * @return Number of bits used by the filter
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+}
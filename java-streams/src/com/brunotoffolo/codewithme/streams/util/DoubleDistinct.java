@@ -0,0 +1,68 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.function.DoublePredicate;
+import java.util.stream.DoubleStream;
+
+/**
+ * Distinct operations for {@link DoubleStream}s, which do not box any value.
+ * <p>
+ * {@code Stream<Double>.distinct()} keeps every value it has seen as a
+ * {@code Double} inside a {@code HashSet}, which costs dozens of bytes per
+ * value. These operations remember the bits of each value in primitive
+ * structures instead: an exact {@link LongHashSet}, or an approximate
+ * {@link BloomFilter} with a fixed size.
+ * <p>
+ * Values are compared by their {@link Double#doubleToLongBits} representation,
+ * which is the same equality used by {@link Double#equals}. The operations are
+ * lazy, so they can be used on infinite streams. They are meant for sequential
+ * streams, but the seen values are always shared through a lock, as the stream
+ * may still be made parallel after the operation is added to it. That keeps
+ * the result correct in parallel, where it serializes the filtering, while the
+ * uncontended lock costs little in a sequential stream.
+ *
+ * @author Bruno Toffolo
+ */
+public final class DoubleDistinct {
+
+    private DoubleDistinct() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Removes the repeated values of a stream, keeping only their first
+     * occurrence.
+     *
+     * @param stream Stream of values
+     * @return Stream without repeated values
+     */
+    public static DoubleStream exact(DoubleStream stream) {
+        LongHashSet seen = new LongHashSet();
+        return stream.filter(guarded(value -> seen.add(Double.doubleToLongBits(value)), seen));
+    }
+
+    /**
+     * Removes the repeated values of a stream using a fixed amount of memory.
+     * Every repeated value is removed, but a value seen for the first time may
+     * also be removed as a false positive.
+     *
+     * @param stream Stream of values
+     * @param expectedValues Expected number of distinct values
+     * @param falsePositiveProbability Probability of removing a value seen for
+     *                                 the first time, once the expected number
+     *                                 of values has been seen
+     * @return Stream without repeated values
+     */
+    public static DoubleStream approximate(DoubleStream stream, long expectedValues, double falsePositiveProbability) {
+        BloomFilter seen = new BloomFilter(expectedValues, falsePositiveProbability);
+        return stream.filter(guarded(value -> seen.add(Double.doubleToLongBits(value)), seen));
+    }
+
+    private static DoublePredicate guarded(DoublePredicate predicate, Object lock) {
+        return value -> {
+            synchronized (lock) {
+                return predicate.test(value);
+            }
+        };
+    }
+
+}
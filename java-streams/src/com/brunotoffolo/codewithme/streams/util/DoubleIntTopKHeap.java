@@ -0,0 +1,156 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+/**
+ * Primitive version of the {@link TopKHeap}, which keeps the int values that
+ * were offered with the k greatest double keys.
+ * <p>
+ * Keys and values are stored in two parallel arrays, so offering a pair does
+ * not box nor allocate anything. This is the fast path to find, for example,
+ * the identifiers of the k greatest grades of a big set of exam results.
+ * <p>
+ * Keys are compared through {@link Double#compare}. When an offered key is equal
+ * to the smallest key kept so far it is discarded, so in case of ties the pairs
+ * offered first are kept. Heaps are not thread-safe, but the heaps filled by
+ * different threads can be combined with {@link #merge}.
+ *
+ * @author Bruno Toffolo
+ */
+public class DoubleIntTopKHeap {
+
+    private final int capacity;
+    private final double[] keys;
+    private final int[] values;
+    private int size;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param k Maximum number of pairs to be kept
+     */
+    public DoubleIntTopKHeap(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of elements to be kept should not be negative");
+        }
+
+        this.capacity = k;
+        this.keys = new double[k];
+        this.values = new int[k];
+    }
+
+    /**
+     * Offers a pair to the heap, which is kept only if its key is among the k
+     * greatest keys offered so far.
+     *
+     * @param key Key of the pair
+     * @param value Value of the pair
+     */
+    public void offer(double key, int value) {
+        if (size < capacity) {
+            siftUp(size++, key, value);
+        } else if (capacity > 0 && Double.compare(key, keys[0]) > 0) {
+            siftDown(0, key, value);
+        }
+    }
+
+    /**
+     * Offers all the pairs kept by another heap to this one.
+     *
+     * @param other Heap to be merged into this one
+     * @return This heap
+     */
+    public DoubleIntTopKHeap merge(DoubleIntTopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.keys[i], other.values[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of pairs kept by the heap.
+     *
+     * @return Number of pairs, which is at most k
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the keys kept by the heap, from the greatest to the smallest.
+     *
+     * @return Sorted keys
+     */
+    public double[] keys() {
+        double[] sortedKeys = new double[size];
+        int[] order = sortedOrder();
+        for (int i = 0; i < size; i++) {
+            sortedKeys[i] = keys[order[i]];
+        }
+        return sortedKeys;
+    }
+
+    /**
+     * Gets the values kept by the heap, ordered from the one with the greatest
+     * key to the one with the smallest key.
+     *
+     * @return Values sorted by their keys
+     */
+    public int[] values() {
+        int[] sortedValues = new int[size];
+        int[] order = sortedOrder();
+        for (int i = 0; i < size; i++) {
+            sortedValues[i] = values[order[i]];
+        }
+        return sortedValues;
+    }
+
+    /**
+     * Computes the positions of the pairs ordered by descending key, through a
+     * simple insertion sort as the heap is expected to be small.
+     */
+    private int[] sortedOrder() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = i;
+            while (j > 0 && Double.compare(keys[order[j - 1]], keys[i]) < 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    private void siftUp(int index, double key, int value) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (Double.compare(key, keys[parent]) >= 0) {
+                break;
+            }
+            keys[index] = keys[parent];
+            values[index] = values[parent];
+            index = parent;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    private void siftDown(int index, double key, int value) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && Double.compare(keys[right], keys[child]) < 0) {
+                child = right;
+            }
+            if (Double.compare(key, keys[child]) <= 0) {
+                break;
+            }
+            keys[index] = keys[child];
+            values[index] = values[child];
+            index = child;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.Arrays;
+import java.util.IntSummaryStatistics;
+import java.util.stream.Collector;
+
+/**
+ * Statistics of the lengths of a set of lines: their count, sum, average,
+ * minimum and maximum, as computed by {@link IntSummaryStatistics}, plus a
+ * histogram of how many lines fall into each range of lengths.
+ * <p>
+ * All the statistics are computed together in a single pass. Just like
+ * {@link IntSummaryStatistics}, instances are not thread-safe, but the
+ * statistics computed by different threads can be combined, so the collector
+ * returned by {@link #collector} can be used in parallel streams.
+ *
+ * @author Bruno Toffolo
+ */
+public class LengthStatistics extends IntSummaryStatistics {
+
+    private final int bucketWidth;
+    private final long[] histogram;
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param bucketWidth Range of lengths covered by each bucket of the histogram
+     * @param buckets Number of buckets of the histogram. The last bucket also
+     *                counts all the lengths beyond the range of the histogram.
+     */
+    public LengthStatistics(int bucketWidth, int buckets) {
+        if (bucketWidth <= 0 || buckets <= 0) {
+            throw new IllegalArgumentException("Histogram should have at least one bucket with a positive width");
+        }
+
+        this.bucketWidth = bucketWidth;
+        this.histogram = new long[buckets];
+    }
+
+    /**
+     * Creates a collector that computes the statistics of the lengths of the
+     * collected lines.
+     *
+     * @param bucketWidth Range of lengths covered by each bucket of the histogram
+     * @param buckets Number of buckets of the histogram
+     * @return Collector of line length statistics
+     */
+    public static Collector<CharSequence, ?, LengthStatistics> collector(int bucketWidth, int buckets) {
+        return Collector.of(
+                () -> new LengthStatistics(bucketWidth, buckets),
+                (statistics, line) -> statistics.accept(line.length()),
+                (left, right) -> {
+                    left.combine(right);
+                    return left;
+                },
+                Collector.Characteristics.IDENTITY_FINISH,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Records the length of a line.
+     *
+     * @param length Length of the line
+     */
+    @Override
+    public void accept(int length) {
+        super.accept(length);
+        histogram[Math.min(length / bucketWidth, histogram.length - 1)]++;
+    }
+
+    /**
+     * Combines the statistics of other lines into these ones.
+     *
+     * @param other Statistics to be combined, which must have the same histogram
+     *              layout
+     */
+    public void combine(LengthStatistics other) {
+        if (other.bucketWidth != bucketWidth || other.histogram.length != histogram.length) {
+            throw new IllegalArgumentException("Statistics with different histograms can not be combined");
+        }
+
+        super.combine(other);
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+    }
+
+    /**
+     * Gets the range of lengths covered by each bucket of the histogram.
+     *
+     * @return Bucket width
+     */
+    public int getBucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * Gets the histogram of lengths. The bucket at position i counts the lines
+     * with lengths from {@code i * bucketWidth} to {@code (i + 1) * bucketWidth - 1},
+     * except for the last bucket, which also counts all the longer lines.
+     *
+     * @return Copy of the histogram
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", histogram=" + Arrays.toString(histogram);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Predicates to be used when filtering lines of text.
+ * <p>
+ * {@link String#matches(String)} compiles its regular expression again on
+ * every call, which is far more expensive than the matching itself when it is
+ * done for every line of a book. The predicates below either check the
+ * characters directly or reuse a precompiled {@link Pattern}.
+ *
+ * @author Bruno Toffolo
+ */
+public final class LinePredicates {
+
+    private LinePredicates() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Checks if a line starts with an uppercase letter from A to Z, by looking at
+     * its first character only. It is equivalent to matching the line against
+     * the regular expression {@code [A-Z].*} for lines that do not contain line
+     * terminators, as is the case of the lines read from a file.
+     *
+     * @return Predicate for lines that start with an uppercase letter
+     */
+    public static Predicate<String> startsWithUppercase() {
+        return line -> !line.isEmpty() && line.charAt(0) >= 'A' && line.charAt(0) <= 'Z';
+    }
+
+    /**
+     * Checks if a whole line matches a precompiled pattern, in the same way as
+     * {@link String#matches(String)} does.
+     *
+     * @param pattern Pattern to be matched
+     * @return Predicate for lines that match the pattern
+     */
+    public static Predicate<String> matches(Pattern pattern) {
+        return line -> pattern.matcher(line).matches();
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+/**
+ * Set of primitive long values, stored in an open-addressing hash table with
+ * linear probing.
+ * <p>
+ * Differently from a {@code HashSet<Long>}, values are not boxed and there are
+ * no entry objects: the whole set is a single long array, which uses about a
+ * tenth of the memory for the same number of values and is much friendlier to
+ * the CPU caches. Instances are not thread-safe.
+ *
+ * @author Bruno Toffolo
+ */
+public class LongHashSet {
+
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+
+    /** Marks an empty slot of the table. The zero value itself is tracked apart. */
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Creates an empty set.
+     */
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty set that can hold the given number of values before
+     * growing.
+     *
+     * @param expectedSize Expected number of values
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size should not be negative");
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, (int) Math.ceil(expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value Value to be added
+     * @return true if the value was not in the set yet; false otherwise
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = hash(value) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = value;
+        if (++size > (table.length * MAX_LOAD_FACTOR)) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a value is in the set.
+     *
+     * @param value Value to be checked
+     * @return true if the value is in the set; false otherwise
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+
+        int slot = hash(value) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of values in the set.
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldTable = table;
+        if (oldTable.length == 1 << 30) {
+            throw new IllegalStateException("Set can not hold more values");
+        }
+
+        table = new long[oldTable.length << 1];
+        mask = table.length - 1;
+        for (long value : oldTable) {
+            if (value != EMPTY) {
+                int slot = hash(value) & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the value, so that values that only differ in their
+     * high bits (such as the bits of close doubles) do not collide.
+     */
+    private static int hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Collectors that compose other collectors, so that many aggregations can be
+ * computed in a single pass over a stream. They follow the same contract as
+ * the {@code teeing} and {@code filtering} collectors added to
+ * {@link java.util.stream.Collectors} in later Java versions.
+ *
+ * @author Bruno Toffolo
+ */
+public final class MoreCollectors {
+
+    private MoreCollectors() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Sends every element to two collectors at once and merges their results.
+     *
+     * @param first First collector
+     * @param second Second collector
+     * @param merger Function that merges the results of both collectors
+     * @param <T> Type of the elements
+     * @param <R1> Result type of the first collector
+     * @param <R2> Result type of the second collector
+     * @param <R> Type of the merged result
+     * @return Collector that combines both collectors
+     */
+    public static <T, R1, R2, R> Collector<T, ?, R> teeing(Collector<? super T, ?, R1> first,
+                                                         Collector<? super T, ?, R2> second,
+                                                         BiFunction<? super R1, ? super R2, R> merger) {
+        return teeing0(first, second, merger);
+    }
+
+    private static <T, A1, A2, R1, R2, R> Collector<T, ?, R> teeing0(Collector<? super T, A1, R1> first,
+                                                                   Collector<? super T, A2, R2> second,
+                                                                   BiFunction<? super R1, ? super R2, R> merger) {
+        Supplier<A1> firstSupplier = first.supplier();
+        Supplier<A2> secondSupplier = second.supplier();
+        BiConsumer<A1, ? super T> firstAccumulator = first.accumulator();
+        BiConsumer<A2, ? super T> secondAccumulator = second.accumulator();
+        BinaryOperator<A1> firstCombiner = first.combiner();
+        BinaryOperator<A2> secondCombiner = second.combiner();
+        Function<A1, R1> firstFinisher = first.finisher();
+        Function<A2, R2> secondFinisher = second.finisher();
+
+        Set<Collector.Characteristics> characteristics = EnumSet.noneOf(Collector.Characteristics.class);
+        if (first.characteristics().contains(Collector.Characteristics.UNORDERED) &&
+                second.characteristics().contains(Collector.Characteristics.UNORDERED)) {
+            characteristics.add(Collector.Characteristics.UNORDERED);
+        }
+
+        return Collector.of(
+                () -> new Pair<>(firstSupplier.get(), secondSupplier.get()),
+                (pair, element) -> {
+                    firstAccumulator.accept(pair.first, element);
+                    secondAccumulator.accept(pair.second, element);
+                },
+                (left, right) -> new Pair<>(
+                        firstCombiner.apply(left.first, right.first),
+                        secondCombiner.apply(left.second, right.second)),
+                pair -> merger.apply(firstFinisher.apply(pair.first), secondFinisher.apply(pair.second)),
+                characteristics.toArray(new Collector.Characteristics[characteristics.size()]));
+    }
+
+    /**
+     * Sends to a collector only the elements that match a predicate. Differently
+     * from filtering the stream itself, this allows other collectors combined
+     * through {@link #teeing} to still receive all the elements.
+     *
+     * @param predicate Predicate that the elements must match
+     * @param downstream Collector that receives the matching elements
+     * @param <T> Type of the elements
+     * @param <A> Accumulation type of the collector
+     * @param <R> Result type of the collector
+     * @return Collector that filters the elements
+     */
+    public static <T, A, R> Collector<T, ?, R> filtering(Predicate<? super T> predicate,
+                                                        Collector<? super T, A, R> downstream) {
+        BiConsumer<A, ? super T> accumulator = downstream.accumulator();
+        return Collector.of(
+                downstream.supplier(),
+                (container, element) -> {
+                    if (predicate.test(element)) {
+                        accumulator.accept(container, element);
+                    }
+                },
+                downstream.combiner(),
+                downstream.finisher(),
+                downstream.characteristics().toArray(new Collector.Characteristics[0]));
+    }
+
+    private static final class Pair<A, B> {
+
+        private final A first;
+        private final B second;
+
+        private Pair(A first, B second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Infinite stream sources that can be split between the threads of a parallel
+ * stream.
+ * <p>
+ * {@link java.util.stream.Stream#generate} and {@link java.util.stream.Stream#iterate}
+ * are poor sources for parallel streams: {@code generate(Math::random)} makes
+ * every thread update the seed of the same {@link java.util.Random}, and
+ * {@code iterate} can only produce an element after the previous one. The
+ * sources of this class avoid both problems:
+ * <ul>
+ *     <li>random numbers come from {@link ThreadLocalRandom} or from a
+ *     {@link SplittableRandom} that is split along with the stream, so no
+ *     generator is ever shared between threads;</li>
+ *     <li>sequences are defined by the closed form of their n-th element, so
+ *     each thread can compute its own part of the sequence.</li>
+ * </ul>
+ * The random streams are unordered, so operations such as {@code skip},
+ * {@code limit} and {@code distinct} do not have to keep the encounter order
+ * when they run in parallel. The sequences are ordered, and they can be split
+ * in halves as a range of numbers is. Every stream is sequential until
+ * {@code parallel()} is called on it.
+ *
+ * @author Bruno Toffolo
+ */
+public final class ParallelSources {
+
+    private ParallelSources() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Creates an infinite stream of random numbers between 0 (inclusive) and 1
+     * (exclusive), generated by the {@link ThreadLocalRandom} of the thread
+     * that consumes each number.
+     *
+     * @return Unordered stream of random numbers
+     */
+    public static DoubleStream randomDoubles() {
+        return ThreadLocalRandom.current().doubles();
+    }
+
+    /**
+     * Creates an infinite stream of random numbers between 0 (inclusive) and 1
+     * (exclusive), generated by a {@link SplittableRandom} created from the
+     * given seed. The generated numbers only depend on the seed and on how the
+     * stream is split, so a sequential stream always produces the same numbers.
+     *
+     * @param seed Seed of the random number generator
+     * @return Unordered stream of random numbers
+     */
+    public static DoubleStream randomDoubles(long seed) {
+        return new SplittableRandom(seed).doubles();
+    }
+
+    /**
+     * Creates an infinite stream of random integers in the given range,
+     * generated by the {@link ThreadLocalRandom} of the thread that consumes
+     * each number.
+     *
+     * @param origin Smallest possible number
+     * @param bound Number right after the greatest possible number
+     * @return Unordered stream of random numbers
+     */
+    public static IntStream randomInts(int origin, int bound) {
+        return ThreadLocalRandom.current().ints(origin, bound);
+    }
+
+    /**
+     * Creates an infinite stream of random integers in the given range,
+     * generated by a {@link SplittableRandom} created from the given seed.
+     *
+     * @param seed Seed of the random number generator
+     * @param origin Smallest possible number
+     * @param bound Number right after the greatest possible number
+     * @return Unordered stream of random numbers
+     */
+    public static IntStream randomInts(long seed, int origin, int bound) {
+        return new SplittableRandom(seed).ints(origin, bound);
+    }
+
+    /**
+     * Creates a stream that counts up from the given number, which is the same
+     * as {@code LongStream.iterate(start, n -> n + 1)} but can be split. The
+     * stream ends when it reaches {@link Long#MAX_VALUE}.
+     *
+     * @param start First number of the stream
+     * @return Ordered stream of consecutive numbers
+     */
+    public static LongStream counter(long start) {
+        return LongStream.range(start, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a stream with the elements of a sequence, given the closed form
+     * of its n-th element. It produces the same elements as a call to
+     * {@code LongStream.iterate} whose function moves from one element to the
+     * next, but every element is computed on its own, so the stream can be
+     * split. For example, {@code iterate(n -> 2 * n + 1)} produces the same
+     * elements as {@code LongStream.iterate(1, x -> x + 2)}.
+     *
+     * @param nthElement Function that gets the element at each position of the
+     *                   sequence, starting from zero
+     * @return Ordered stream with the elements of the sequence
+     */
+    public static LongStream iterate(LongUnaryOperator nthElement) {
+        return counter(0).map(nthElement);
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts how many times each term appears, in an open-addressing hash table
+ * with linear probing.
+ * <p>
+ * Differently from a {@code HashMap<String, Long>}, there are no entry objects
+ * and no boxed counts: the table is made of an array of terms, an array of
+ * their hash codes and an array of their counts. Terms are looked up by any
+ * {@link CharSequence}, such as a {@link StringBuilder} reused for every term
+ * of a text, and a String is only created the first time a term is counted,
+ * so counting a term that was already seen does not allocate anything.
+ * <p>
+ * Instances are not thread-safe, but the counters filled by different threads
+ * can be combined with {@link #merge}.
+ *
+ * @author Bruno Toffolo
+ */
+public class TermCounter {
+
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+
+    /** Rough number of bytes taken by a String besides its characters. */
+    private static final int STRING_OVERHEAD = 56;
+
+    /** Number of bytes taken by each slot of the table: a reference, a hash code and a count. */
+    private static final int SLOT_SIZE = 8 + 4 + 8;
+
+    /**
+     * Receives the terms of a counter along with their counts.
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+
+        /**
+         * Receives a term.
+         *
+         * @param term Counted term
+         * @param count Number of times the term was counted
+         */
+        void accept(String term, long count);
+    }
+
+    private String[] terms;
+    private int[] hashes;
+    private long[] counts;
+    private int mask;
+    private int size;
+    private long characters;
+
+    /**
+     * Creates an empty counter.
+     */
+    public TermCounter() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty counter that can hold the given number of terms before
+     * growing.
+     *
+     * @param expectedSize Expected number of distinct terms
+     */
+    public TermCounter(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size should not be negative");
+        }
+
+        allocate(Integer.highestOneBit(Math.max(2, (int) Math.ceil(expectedSize / MAX_LOAD_FACTOR)) - 1) << 1);
+    }
+
+    /**
+     * Counts one more occurrence of a term.
+     *
+     * @param term Term to be counted
+     * @return The term as stored by the counter, which is the same String for
+     *         every occurrence of the term
+     */
+    public String add(CharSequence term) {
+        return add(term, 1);
+    }
+
+    /**
+     * Counts a number of occurrences of a term.
+     *
+     * @param term Term to be counted
+     * @param count Number of occurrences
+     * @return The term as stored by the counter, which is the same String for
+     *         every occurrence of the term
+     */
+    public String add(CharSequence term, long count) {
+        int hash = hash(term);
+        int slot = spread(hash) & mask;
+        while (terms[slot] != null) {
+            if (hashes[slot] == hash && terms[slot].contentEquals(term)) {
+                counts[slot] += count;
+                return terms[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String stored = term.toString();
+        terms[slot] = stored;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        characters += stored.length();
+        if (++size > (terms.length * MAX_LOAD_FACTOR)) {
+            resize();
+        }
+        return stored;
+    }
+
+    /**
+     * Gets the number of times a term was counted.
+     *
+     * @param term Term to be looked up
+     * @return Number of occurrences, which is zero if the term was never counted
+     */
+    public long getCount(CharSequence term) {
+        int hash = hash(term);
+        int slot = spread(hash) & mask;
+        while (terms[slot] != null) {
+            if (hashes[slot] == hash && terms[slot].contentEquals(term)) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of distinct terms counted.
+     *
+     * @return Number of terms
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimates the memory taken by the counter, including its terms.
+     *
+     * @return Approximate number of bytes
+     */
+    public long estimatedBytes() {
+        return (long) terms.length * SLOT_SIZE + (long) size * STRING_OVERHEAD + 2 * characters;
+    }
+
+    /**
+     * Hands every term and its count to a consumer, in no particular order.
+     *
+     * @param consumer Consumer of the terms
+     */
+    public void forEach(TermConsumer consumer) {
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i] != null) {
+                consumer.accept(terms[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets the terms of the counter sorted in their natural order, which is
+     * how they are merged when they are spilled to disk.
+     *
+     * @return Sorted array of terms
+     */
+    public String[] sortedTerms() {
+        String[] sorted = new String[size];
+        int next = 0;
+        for (String term : terms) {
+            if (term != null) {
+                sorted[next++] = term;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Adds the counts of another counter into this one.
+     *
+     * @param other Counter to be merged into this one
+     * @return This counter
+     */
+    public TermCounter merge(TermCounter other) {
+        other.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Removes all the terms, releasing the memory taken by them.
+     */
+    public void clear() {
+        allocate(16);
+        size = 0;
+        characters = 0;
+    }
+
+    private void allocate(int capacity) {
+        terms = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize() {
+        String[] oldTerms = terms;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        if (oldTerms.length == 1 << 30) {
+            throw new IllegalStateException("Counter can not hold more terms");
+        }
+
+        allocate(oldTerms.length << 1);
+        for (int i = 0; i < oldTerms.length; i++) {
+            if (oldTerms[i] != null) {
+                int slot = spread(oldHashes[i]) & mask;
+                while (terms[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                terms[slot] = oldTerms[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Computes the same hash code as {@link String#hashCode()} for any
+     * sequence of characters.
+     */
+    private static int hash(CharSequence term) {
+        int hash = 0;
+        for (int i = 0; i < term.length(); i++) {
+            hash = 31 * hash + term.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Spreads the bits of a String hash code, whose low bits alone collide
+     * for many short terms, so the high bits also pick the slot.
+     */
+    private static int spread(int hash) {
+        int spread = hash * 0x9E3779B9;
+        return spread ^ (spread >>> 16);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+
+/**
+ * Collectors that keep only the k greatest elements of a stream, through the
+ * bounded heaps {@link TopKHeap} and {@link DoubleIntTopKHeap}.
+ * <p>
+ * They replace the usual {@code sorted(...).limit(k)} sequence of operations,
+ * which needs to buffer and sort the whole stream, by a single pass that uses
+ * memory proportional to k. When used in a parallel stream, each thread fills
+ * its own heap and the heaps are merged at the end.
+ *
+ * @author Bruno Toffolo
+ */
+public final class TopKCollectors {
+
+    private TopKCollectors() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Collects the k greatest elements of the stream according to a comparator.
+     *
+     * @param k Number of elements to be kept
+     * @param comparator Comparator that defines which elements are the greatest
+     * @param <T> Type of the elements
+     * @return Collector that returns the elements from the greatest to the smallest
+     */
+    public static <T> Collector<T, ?, List<T>> greatest(int k, Comparator<? super T> comparator) {
+        return Collector.of(
+                () -> new TopKHeap<T>(k, comparator),
+                TopKHeap::offer,
+                TopKHeap::merge,
+                TopKHeap::toSortedList);
+    }
+
+    /**
+     * Collects an int value of the k elements of the stream with the greatest
+     * double keys, without boxing any of them.
+     *
+     * @param k Number of elements to be kept
+     * @param key Function that extracts the key of an element
+     * @param value Function that extracts the value of an element
+     * @param <T> Type of the elements
+     * @return Collector that returns a heap with the values of the kept elements
+     */
+    public static <T> Collector<T, ?, DoubleIntTopKHeap> greatestByDouble(
+            int k, ToDoubleFunction<? super T> key, ToIntFunction<? super T> value) {
+        return Collector.of(
+                () -> new DoubleIntTopKHeap(k),
+                (heap, element) -> heap.offer(key.applyAsDouble(element), value.applyAsInt(element)),
+                DoubleIntTopKHeap::merge,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the k greatest elements offered to it, according to a comparator.
+ * <p>
+ * The elements are stored in a min-heap bounded to k positions, whose root is
+ * the smallest of the elements kept so far. A new element only enters the heap
+ * when it is greater than the root, which it then replaces. Finding the k
+ * greatest elements out of n therefore takes O(n log k) time and O(k) memory,
+ * instead of the O(n log n) time and O(n) memory needed to sort all of them.
+ * <p>
+ * When an offered element is equal to the root it is discarded, so in case of
+ * ties the elements offered first are kept. Heaps are not thread-safe, but the
+ * heaps filled by different threads can be combined with {@link #merge}.
+ *
+ * @param <T> Type of the elements
+ * @author Bruno Toffolo
+ */
+public class TopKHeap<T> {
+
+    private final int capacity;
+    private final Comparator<? super T> comparator;
+    private final Object[] elements;
+    private int size;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param k Maximum number of elements to be kept
+     * @param comparator Comparator that defines which elements are the greatest
+     */
+    public TopKHeap(int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of elements to be kept should not be negative");
+        }
+
+        this.capacity = k;
+        this.comparator = comparator;
+        this.elements = new Object[k];
+    }
+
+    /**
+     * Offers an element to the heap, which is kept only if it is among the k
+     * greatest elements offered so far.
+     *
+     * @param element Element to be offered
+     */
+    public void offer(T element) {
+        if (size < capacity) {
+            elements[size] = element;
+            siftUp(size++);
+        } else if (capacity > 0 && comparator.compare(element, elementAt(0)) > 0) {
+            elements[0] = element;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Offers all the elements kept by another heap to this one.
+     *
+     * @param other Heap to be merged into this one
+     * @return This heap
+     */
+    public TopKHeap<T> merge(TopKHeap<T> other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.elementAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of elements kept by the heap.
+     *
+     * @return Number of elements, which is at most k
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the elements kept by the heap, from the greatest to the smallest.
+     *
+     * @return Sorted list of elements
+     */
+    public List<T> toSortedList() {
+        List<T> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(elementAt(i));
+        }
+        sorted.sort(Collections.reverseOrder(comparator));
+        return sorted;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(elements, size));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementAt(int index) {
+        return (T) elements[index];
+    }
+
+    private void siftUp(int index) {
+        T element = elementAt(index);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (comparator.compare(element, elementAt(parent)) >= 0) {
+                break;
+            }
+            elements[index] = elements[parent];
+            index = parent;
+        }
+        elements[index] = element;
+    }
+
+    private void siftDown(int index) {
+        T element = elementAt(index);
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && comparator.compare(elementAt(right), elementAt(child)) < 0) {
+                child = right;
+            }
+            if (comparator.compare(element, elementAt(child)) <= 0) {
+                break;
+            }
+            elements[index] = elements[child];
+            index = child;
+        }
+        elements[index] = element;
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.brunotoffolo.codewithme.streams.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits lines of text into words. A word is any sequence of letters, digits
+ * or apostrophes, and it is always converted to lowercase so that the same
+ * word is reported in the same way regardless of where it appears in a line.
+ *
+ * @author Bruno Toffolo
+ */
+public final class WordTokenizer {
+
+    private WordTokenizer() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Hands every word of the line to the given action, in the order they appear.
+     *
+     * @param line Line to be split
+     * @param action Action to be performed for each word
+     */
+    public static void forEachWord(CharSequence line, Consumer<String> action) {
+        int length = line.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && isWordChar(line.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                action.accept(normalize(line.subSequence(start, i).toString()));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Hands every word of the line to the given action, in the order they appear,
+     * without creating a String for each of them. Every word is written into the
+     * same buffer, so the action must copy it if the word is needed after the
+     * action returns.
+     *
+     * @param line Line to be split
+     * @param word Buffer into which each normalized word is written
+     * @param action Action to be performed for each word, which receives the buffer
+     */
+    public static void forEachWord(CharSequence line, StringBuilder word, Consumer<? super StringBuilder> action) {
+        int length = line.length();
+        int start = -1;
+        boolean ascii = true;
+        word.setLength(0);
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? line.charAt(i) : ' ';
+            if (isWordChar(c)) {
+                if (start < 0) {
+                    start = i;
+                }
+                ascii &= c < 128;
+                word.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else if (start >= 0) {
+                if (!ascii) {
+                    // Outside ASCII, lowercase letters may depend on the letters around them
+                    word.setLength(0);
+                    word.append(normalize(line.subSequence(start, i).toString()));
+                }
+                action.accept(word);
+                word.setLength(0);
+                start = -1;
+                ascii = true;
+            }
+        }
+    }
+
+    /**
+     * Splits the line into its words.
+     *
+     * @param line Line to be split
+     * @return List of words, in the order they appear
+     */
+    public static List<String> words(CharSequence line) {
+        List<String> words = new ArrayList<>();
+        forEachWord(line, words::add);
+        return words;
+    }
+
+    /**
+     * Converts a word into the form in which it is reported by the tokenizer.
+     *
+     * @param word Word to be converted
+     * @return Normalized word
+     */
+    public static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'';
+    }
+
+}